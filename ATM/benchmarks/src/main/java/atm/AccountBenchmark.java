@@ -0,0 +1,104 @@
+package atm;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of the account operations behind the ATM menu, on an ATM without a journal.
+ *
+ * With the "cold" distribution every thread picks accounts at random from all of them; with
+ * "hot" all threads share four accounts, so the numbers show lock contention. The menu methods
+ * print their results, so the benchmarks call the silent try methods they are built on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmark {
+    private static final int HOT_ACCOUNTS = 4;
+
+    @Param({"1000", "1000000"})
+    int accounts;
+
+    @Param({"cold", "hot"})
+    String distribution;
+
+    ATM atm;
+    String[] accountIds;
+    int spread;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        atm = new ATM(accounts);
+        accountIds = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountIds[i] = String.valueOf(i);
+            atm.tryOpenAccount(accountIds[i], Money.of(1_000_000_000, 0), "1234");
+            // Withdrawals must not run into the daily limit during a run
+            atm.selectAccount(accountIds[i]).setDailyLimit(Long.MAX_VALUE / 2);
+        }
+        spread = distribution.equals("hot") ? Math.min(HOT_ACCOUNTS, accounts) : accounts;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        atm.close();
+    }
+
+    /**
+     * Picks the accounts of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Picker {
+        private final SplittableRandom random = new SplittableRandom();
+
+        String next(AccountBenchmark benchmark) {
+            return benchmark.accountIds[random.nextInt(benchmark.spread)];
+        }
+
+        String nextOther(AccountBenchmark benchmark, String accountId) {
+            String other = next(benchmark);
+            while (other.equals(accountId) && benchmark.spread > 1) {
+                other = next(benchmark);
+            }
+            return other;
+        }
+    }
+
+    @Benchmark
+    public TransactionResult deposit(Picker picker) {
+        return atm.tryDeposit(picker.next(this), 1);
+    }
+
+    @Benchmark
+    public TransactionResult withdraw(Picker picker) {
+        return atm.tryWithdraw(picker.next(this), 1);
+    }
+
+    @Benchmark
+    public TransactionResult verifyPin(Picker picker) {
+        return atm.tryVerifyPin(picker.next(this), "1234");
+    }
+
+    @Benchmark
+    public TransactionResult transfer(Picker picker) {
+        String source = picker.next(this);
+        return atm.tryTransfer(source, picker.nextOther(this, source), 1);
+    }
+}
@@ -0,0 +1,44 @@
+package atm;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all ATM benchmarks once per thread count, with the allocation profiler, and writes the
+ * results of each thread count to a JSON file that can be compared between builds.
+ *
+ * Usage: java -cp benchmarks.jar atm.BenchmarkRunner [thread counts, default 1,4] [result directory]
+ * Any further arguments are benchmark name patterns; by default all benchmarks run.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1,4").split(",");
+        Path directory = Paths.get(args.length > 1 ? args[1] : ".");
+
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount.trim());
+            OptionsBuilder options = new OptionsBuilder();
+            if (args.length > 2) {
+                for (int i = 2; i < args.length; i++) {
+                    options.include(args[i]);
+                }
+            } else {
+                options.include("atm\\.");
+            }
+            Options run = options
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class) // Reports gc.alloc.rate.norm, the bytes allocated per operation
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(directory.resolve("jmh-threads-" + threads + ".json").toString())
+                    .build();
+            new Runner(run).run();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package atm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of showing the transaction history as it grows, up to the size at which the history
+ * starts to overwrite its oldest entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+    @Param({"10", "1000", "10000"})
+    int historySize;
+
+    ATM atm;
+    BankAccount account;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        atm = new ATM();
+        atm.tryOpenAccount("1", 0, "1234");
+        for (int i = 0; i < historySize; i++) {
+            atm.tryDeposit("1", 1);
+        }
+        account = atm.selectAccount("1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        atm.close();
+    }
+
+    /**
+     * The page buffer of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Page {
+        final List<String> lines = new ArrayList<>();
+    }
+
+    /**
+     * The first page of the menu's "View Transaction History".
+     */
+    @Benchmark
+    public List<String> firstPage(Page page) {
+        page.lines.clear();
+        atm.formatTransactionHistory(account, 0, page.lines);
+        return page.lines;
+    }
+
+    /**
+     * A copy of the whole history, as {@link BankAccount#getTransactionHistory()} returns it. History
+     * pages read the history in place, so this is the cost a page no longer pays.
+     */
+    @Benchmark
+    public TransactionLog historyCopy() {
+        return account.getTransactionHistory();
+    }
+}
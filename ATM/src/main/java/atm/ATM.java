@@ -0,0 +1,1310 @@
+package atm;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import atm.AtmMetrics.Operation;
+
+/**
+ * Represents an ATM machine.
+ */
+public class ATM {
+    private final AtmMetrics metrics = new AtmMetrics();
+    private volatile FraudMonitor fraudMonitor;
+    private volatile ExchangeRates exchangeRates;
+    private volatile EventSink events = new EventSink(new OutputStreamWriter(System.out), 1024, ATM::formatMessage);
+    private final AccountStore store;
+    private final ScheduledExecutorService timers;
+    private TransactionJournal journal;
+    private final Object openMonitor = new Object(); // Serializes account openings
+    private volatile boolean deferJournalSync;
+    private volatile long lockoutMillis = DEFAULT_LOCKOUT_MILLIS;
+
+    // Checkpoint state, only used on the checkpoint thread once the ATM is running
+    private ExecutorService checkpointer;
+    private Path snapshotFile;
+    private long snapshotGeneration;
+    private int snapshotSequence;
+
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final int MAX_PIN_ATTEMPTS = 3;
+    private static final int MAX_PIN_LENGTH = 16;
+    static final long DEFAULT_LOCKOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    /**
+     * Constructor to initialize an ATM without any accounts.
+     */
+    public ATM() {
+        this(1024);
+    }
+
+    /**
+     * Constructor to initialize an ATM without any accounts, sized for the expected number of accounts.
+     * 
+     * @param expectedAccounts The number of accounts the ATM will hold.
+     */
+    public ATM(int expectedAccounts) {
+        this.store = new AccountStore(expectedAccounts, metrics);
+        // One thread drives the daily window resets and lockout expiries of all accounts
+        this.timers = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "atm-timers");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timers.scheduleAtFixedRate(() -> store.advanceTimers(System.currentTimeMillis()),
+                AccountStore.TIMER_TICK_MILLIS, AccountStore.TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the latency histograms, rejection counters and lock wait times of this ATM.
+     * 
+     * @return The metrics.
+     */
+    public AtmMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sends the messages of the menu operations (deposit, withdraw, transferFunds, ...) to another sink,
+     * for example a log file. By default they go to the console. The previous sink is closed.
+     * 
+     * @param sink The new sink.
+     */
+    public void setEventSink(EventSink sink) {
+        EventSink previous = events;
+        events = sink;
+        previous.close();
+    }
+
+    /**
+     * Sets the exchange-rate table for conversions by currency code, and rereads its file at a
+     * fixed rate on the ATM's timer thread when the file has changed.
+     * 
+     * @param rates          The rates.
+     * @param refreshSeconds The time between two checks of the file, or 0 for no refresh.
+     */
+    public void setExchangeRates(ExchangeRates rates, long refreshSeconds) {
+        this.exchangeRates = rates;
+        if (refreshSeconds > 0) {
+            timers.scheduleWithFixedDelay(() -> {
+                try {
+                    rates.refresh();
+                } catch (IOException e) {
+                    System.err.println("Exchange rates not refreshed: " + e.getMessage());
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the exchange-rate table.
+     * 
+     * @return The rates, or null if none were set.
+     */
+    public ExchangeRates getExchangeRates() {
+        return exchangeRates;
+    }
+
+    /**
+     * Converts the balance of every account to another currency in one pass over the store, for
+     * reports. Balances are read without locks, see {@link AccountStore#convertBalances}.
+     * 
+     * @param currency The currency code to convert to.
+     * @param rounding How to round to whole cents.
+     * @param report   Receives one "&lt;account&gt; &lt;converted balance&gt;" line per account.
+     * @return The sum of the converted balances in cents.
+     * @throws IllegalStateException    If no exchange rates were set.
+     * @throws IllegalArgumentException If the rate table does not have the currency or the account currency.
+     * @throws IOException              If the report cannot be written.
+     */
+    public long writeConvertedBalances(String currency, RoundingMode rounding, Writer report) throws IOException {
+        ExchangeRates rates = exchangeRates;
+        if (rates == null) {
+            throw new IllegalStateException("No exchange rates set");
+        }
+        ExchangeRates.Table table = rates.current();
+        long numerator = table.rate(currency);
+        long denominator = table.rate(BankAccount.CURRENCY);
+        int capacity = store.reportCapacity();
+        long[] ids = new long[capacity];
+        long[] converted = new long[capacity];
+        int count = store.convertBalances(numerator, denominator, rounding, ids, converted);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            report.write(ids[i] + " " + Money.format(converted[i]) + "\n");
+            total += converted[i];
+        }
+        return total;
+    }
+
+    /**
+     * Feeds every deposit, withdrawal, transfer, wrong PIN and PIN check of an unknown account to a
+     * fraud monitor from now on.
+     * The monitor is closed with the ATM.
+     * 
+     * @param monitor The monitor, or null to stop monitoring.
+     */
+    public void setFraudMonitor(FraudMonitor monitor) {
+        this.fraudMonitor = monitor;
+    }
+
+    /**
+     * Writes the metrics as a text table at a fixed rate, on the ATM's timer thread.
+     * 
+     * @param periodSeconds The time between two dumps.
+     * @param out           The stream to write to.
+     */
+    public void startMetricsDump(long periodSeconds, PrintStream out) {
+        timers.scheduleAtFixedRate(() -> metrics.dump(out), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets how long an account stays locked after too many wrong PINs. Lockouts that already
+     * started keep their original end.
+     * 
+     * @param millis The lockout duration in milliseconds.
+     */
+    public void setLockoutCooldown(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Lockout cooldown must be positive");
+        }
+        this.lockoutMillis = millis;
+    }
+
+    /**
+     * Rebuilds an ATM from a transaction journal and keeps writing new operations to it.
+     * 
+     * @param journalFile The journal file. It is created if it does not exist.
+     * @return The ATM with all accounts, balances and PINs restored.
+     */
+    public static ATM recover(Path journalFile) {
+        return recover(journalFile, null);
+    }
+
+    /**
+     * Rebuilds an ATM from a snapshot and the journal records written since it was started.
+     * The snapshot is mapped, not read: its accounts are loaded when they are first used.
+     * Checkpoints of the ATM are then written to the same snapshot file.
+     * 
+     * @param journalFile  The journal file, or null. It is created if it does not exist.
+     * @param snapshotFile The full snapshot file, or null. It need not exist yet.
+     * @return The ATM with all accounts, balances and PINs restored.
+     */
+    public static ATM recover(Path journalFile, Path snapshotFile) {
+        ATM atm = new ATM();
+        long replayFrom = 0;
+        if (snapshotFile != null) {
+            AccountSnapshot[] chain = AccountSnapshot.openChain(snapshotFile);
+            atm.store.attachSnapshots(chain);
+            atm.snapshotFile = snapshotFile;
+            if (chain.length > 0) {
+                AccountSnapshot newest = chain[chain.length - 1];
+                atm.snapshotGeneration = newest.generation();
+                atm.snapshotSequence = newest.sequence();
+                replayFrom = newest.journalPosition();
+            }
+        }
+        if (journalFile == null) {
+            return atm;
+        }
+        long[] unknownAccountRecords = new long[1];
+        atm.journal = TransactionJournal.open(journalFile, replayFrom, new TransactionJournal.Visitor() {
+            @Override
+            public void openAccount(long position, long timestamp, String accountId, long initialBalance, long pinHash) {
+                long id = AccountStore.parseId(accountId);
+                int record = atm.store.add(id, initialBalance, BankAccount.DEFAULT_DAILY_LIMIT, pinHash);
+                if (record >= 0) {
+                    atm.store.setJournalPosition(record, position);
+                }
+            }
+
+            @Override
+            public void deposit(long position, long timestamp, String accountId, long amount) {
+                BankAccount account = atm.selectAccount(accountId);
+                if (replays(account, position)) {
+                    account.applyDeposit(timestamp, amount, TransactionLog.DEPOSIT);
+                }
+            }
+
+            @Override
+            public void withdraw(long position, long timestamp, String accountId, long amount) {
+                BankAccount account = atm.selectAccount(accountId);
+                if (replays(account, position)) {
+                    account.applyWithdrawal(timestamp, amount, TransactionLog.WITHDRAWAL);
+                }
+            }
+
+            @Override
+            public void transfer(long position, long timestamp, String sourceAccountId, String targetAccountId, long amount) {
+                BankAccount sourceAccount = atm.selectAccount(sourceAccountId);
+                BankAccount targetAccount = atm.selectAccount(targetAccountId);
+                if (sourceAccount == null || targetAccount == null) {
+                    unknownAccountRecords[0]++; // Neither side, so no money appears or disappears
+                    return;
+                }
+                if (replays(sourceAccount, position)) {
+                    sourceAccount.applyWithdrawal(timestamp, amount, TransactionLog.TRANSFER_OUT);
+                }
+                if (replays(targetAccount, position)) {
+                    targetAccount.applyDeposit(timestamp, amount, TransactionLog.TRANSFER_IN);
+                }
+            }
+
+            @Override
+            public void changePin(long position, long timestamp, String accountId, long pinHash) {
+                BankAccount account = atm.selectAccount(accountId);
+                if (replays(account, position)) {
+                    atm.store.setPinHash(account.record(), pinHash);
+                }
+            }
+
+            /**
+             * Returns whether a journal record is newer than the snapshot of the account, and if
+             * so, moves the account's journal position past it. Records of accounts that were never
+             * opened are skipped: journals written before the opening was journaled first can have
+             * operations ahead of their account's OPEN record.
+             */
+            private boolean replays(BankAccount account, long position) {
+                if (account == null) {
+                    unknownAccountRecords[0]++;
+                    return false;
+                }
+                if (atm.store.journalPosition(account.record()) >= position) {
+                    return false; // Already in the snapshot
+                }
+                atm.store.setJournalPosition(account.record(), position);
+                return true;
+            }
+        });
+        if (unknownAccountRecords[0] > 0) {
+            System.err.println("Skipped " + unknownAccountRecords[0] + " journal records of unknown accounts");
+        }
+        return atm;
+    }
+
+    /**
+     * Sets the file that {@link #checkpoint(boolean)} writes snapshots to, for an ATM that was
+     * not recovered from one.
+     * 
+     * @param snapshotFile The full snapshot file. Incremental snapshots are written next to it.
+     */
+    public void setSnapshotFile(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Starts writing a snapshot of all accounts in the background while the ATM keeps running.
+     * An incremental snapshot only writes the accounts changed since the previous snapshot; the
+     * first snapshot is always full. Checkpoints run one at a time, in the order requested.
+     * 
+     * @param full True for a full snapshot, false for an incremental one.
+     * @return A future that completes when the snapshot is on disk.
+     */
+    public Future<?> checkpoint(boolean full) {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("No snapshot file set");
+        }
+        synchronized (this) {
+            if (checkpointer == null) {
+                checkpointer = Executors.newSingleThreadExecutor(task -> {
+                    Thread thread = new Thread(task, "atm-checkpoint");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return checkpointer.submit(() -> writeCheckpoint(full));
+    }
+
+    private void writeCheckpoint(boolean full) {
+        TransactionJournal current = journal;
+        // Every operation journaled before this position is in the snapshot. Taken under the open
+        // monitor, so every account journaled before it has been added to the store too.
+        long journalPosition;
+        synchronized (openMonitor) {
+            journalPosition = current == null ? 0 : current.position();
+        }
+        if (full || snapshotGeneration == 0) {
+            snapshotGeneration = AccountSnapshot.writeFull(store, snapshotFile, journalPosition, current);
+            snapshotSequence = 0;
+        } else {
+            AccountSnapshot.writeIncrement(store, snapshotFile, snapshotGeneration, snapshotSequence + 1, journalPosition, current);
+            snapshotSequence++;
+        }
+    }
+
+    /**
+     * Writes a snapshot and waits for it. Used before the ATM shuts down.
+     * 
+     * @param full True for a full snapshot, false for an incremental one.
+     */
+    void checkpointAndWait(boolean full) {
+        try {
+            checkpoint(full).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Checkpoint failed: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Adds a new account to the ATM and records it in the journal. Problems are reported on the event sink.
+     * 
+     * @param accountId      The account ID, a number.
+     * @param initialBalance The starting balance in cents.
+     * @param pin            The PIN of the account.
+     * @return The result of the operation.
+     */
+    public TransactionResult openAccount(String accountId, long initialBalance, String pin) {
+        TransactionResult result = tryOpenAccount(accountId, initialBalance, pin);
+        events.publish(EventSink.Type.OPEN_ACCOUNT, result, accountId, null, initialBalance, initialBalance, 0);
+        return result;
+    }
+
+    /**
+     * Opens a new account with the given balance and records it in the journal, without any output.
+     * 
+     * @param accountId      The account ID.
+     * @param initialBalance The starting balance in cents.
+     * @param pin            The PIN of the account, 1 to {@value #MAX_PIN_LENGTH} characters.
+     * @return The result of the operation.
+     */
+    public TransactionResult tryOpenAccount(String accountId, long initialBalance, String pin) {
+        long id = AccountStore.parseId(accountId);
+        if (id < 0) {
+            return TransactionResult.INVALID_ACCOUNT_ID;
+        }
+        if (initialBalance < 0) {
+            return TransactionResult.INVALID_AMOUNT;
+        }
+        if (!isValidPin(pin)) {
+            return TransactionResult.INVALID_PIN;
+        }
+        long pinHash = AccountStore.hashPin(id, pin);
+        long journalPosition = -1;
+        // The OPEN record is appended before the account becomes visible, so no operation on the
+        // account can reach the journal ahead of it. Opens are serialized, so only one of two
+        // threads opening the same account journals it.
+        synchronized (openMonitor) {
+            if (store.find(id) >= 0) {
+                return TransactionResult.ACCOUNT_EXISTS;
+            }
+            if (journal != null) {
+                journalPosition = journal.appendOpenAccount(accountId, initialBalance, pinHash);
+            }
+            int record = store.add(id, initialBalance, BankAccount.DEFAULT_DAILY_LIMIT, pinHash);
+            if (journalPosition >= 0) {
+                store.lock(record);
+                try {
+                    if (store.journalPosition(record) < journalPosition) { // Unless an operation got in first
+                        store.setJournalPosition(record, journalPosition);
+                    }
+                } finally {
+                    store.unlock(record);
+                }
+            }
+        }
+        awaitJournal(journalPosition);
+        return TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Deposits money into an account and records it in the journal. The outcome is reported on the event sink.
+     * 
+     * @param accountId The account ID.
+     * @param amount    The amount to deposit in cents.
+     * @return The result of the deposit.
+     */
+    public TransactionResult deposit(String accountId, long amount) {
+        long[] balance = new long[1];
+        TransactionResult result = deposit(accountId, amount, balance);
+        events.publish(EventSink.Type.DEPOSIT, result, accountId, null, amount, balance[0], 0);
+        return result;
+    }
+
+    /**
+     * Deposits money into an account and records it in the journal, without any output.
+     * 
+     * @param accountId The account ID.
+     * @param amount    The amount to deposit in cents.
+     * @return The result of the deposit.
+     */
+    public TransactionResult tryDeposit(String accountId, long amount) {
+        return deposit(accountId, amount, null);
+    }
+
+    /**
+     * Deposits money, and on success stores the new balance as read under the account lock.
+     *
+     * @param balance Receives the new balance in its first element, may be null.
+     */
+    private TransactionResult deposit(String accountId, long amount, long[] balance) {
+        long start = System.nanoTime();
+        TransactionResult result = depositAndJournal(accountId, amount, balance);
+        watch(FraudMonitor.DEPOSIT, accountId, null, amount, result);
+        return metrics.record(Operation.DEPOSIT, start, result);
+    }
+
+    private TransactionResult depositAndJournal(String accountId, long amount, long[] balance) {
+        BankAccount account = selectAccount(accountId);
+        if (account == null) {
+            return TransactionResult.UNKNOWN_ACCOUNT;
+        }
+        TransactionResult result;
+        long journalPosition = -1;
+        account.lock();
+        try {
+            result = account.tryDeposit(amount, TransactionLog.DEPOSIT);
+            if (result == TransactionResult.SUCCESS && journal != null) {
+                journalPosition = journal.appendAmount(TransactionJournal.DEPOSIT, accountId, amount);
+                store.setJournalPosition(account.record(), journalPosition);
+            }
+            if (result == TransactionResult.SUCCESS && balance != null) {
+                balance[0] = store.balance(account.record());
+            }
+        } finally {
+            account.unlock();
+        }
+        awaitJournal(journalPosition);
+        return result;
+    }
+
+    /**
+     * Withdraws money from an account and records it in the journal. The outcome is reported on the event sink.
+     * 
+     * @param accountId The account ID.
+     * @param amount    The amount to withdraw in cents.
+     * @return The result of the withdrawal.
+     */
+    public TransactionResult withdraw(String accountId, long amount) {
+        long[] balance = new long[1];
+        TransactionResult result = withdraw(accountId, amount, balance);
+        events.publish(EventSink.Type.WITHDRAW, result, accountId, null, amount, balance[0], 0);
+        return result;
+    }
+
+    /**
+     * Withdraws money from an account and records it in the journal, without any output.
+     * 
+     * @param accountId The account ID.
+     * @param amount    The amount to withdraw in cents.
+     * @return The result of the withdrawal.
+     */
+    public TransactionResult tryWithdraw(String accountId, long amount) {
+        return withdraw(accountId, amount, null);
+    }
+
+    /**
+     * Withdraws money, and on success stores the new balance as read under the account lock.
+     *
+     * @param balance Receives the new balance in its first element, may be null.
+     */
+    private TransactionResult withdraw(String accountId, long amount, long[] balance) {
+        long start = System.nanoTime();
+        TransactionResult result = withdrawAndJournal(accountId, amount, balance);
+        watch(FraudMonitor.WITHDRAW, accountId, null, amount, result);
+        return metrics.record(Operation.WITHDRAW, start, result);
+    }
+
+    private TransactionResult withdrawAndJournal(String accountId, long amount, long[] balance) {
+        BankAccount account = selectAccount(accountId);
+        if (account == null) {
+            return TransactionResult.UNKNOWN_ACCOUNT;
+        }
+        TransactionResult result;
+        long journalPosition = -1;
+        account.lock();
+        try {
+            result = account.tryWithdraw(amount, TransactionLog.WITHDRAWAL);
+            if (result == TransactionResult.SUCCESS && journal != null) {
+                journalPosition = journal.appendAmount(TransactionJournal.WITHDRAW, accountId, amount);
+                store.setJournalPosition(account.record(), journalPosition);
+            }
+            if (result == TransactionResult.SUCCESS && balance != null) {
+                balance[0] = store.balance(account.record());
+            }
+        } finally {
+            account.unlock();
+        }
+        awaitJournal(journalPosition);
+        return result;
+    }
+
+    /**
+     * First phase of a transfer whose two accounts are owned by different threads: takes the money
+     * out of the source account and journals the whole transfer. The caller must then hand the
+     * amount to {@link #creditTransfer(String, long)} for the target account. Until then the
+     * amount is a pending credit of the target, which checkpoints count as part of its balance.
+     * 
+     * @param sourceAccountId The ID of the source account.
+     * @param targetAccountId The ID of the target account.
+     * @param amount          The amount to transfer in cents.
+     * @return The result of the debit. Only on SUCCESS must the credit follow.
+     */
+    TransactionResult debitForTransfer(String sourceAccountId, String targetAccountId, long amount) {
+        long start = System.nanoTime();
+        TransactionResult result = debitAndJournal(sourceAccountId, targetAccountId, amount);
+        watch(FraudMonitor.TRANSFER, sourceAccountId, targetAccountId, amount, result);
+        return metrics.record(Operation.TRANSFER, start, result);
+    }
+
+    private TransactionResult debitAndJournal(String sourceAccountId, String targetAccountId, long amount) {
+        if (sourceAccountId.equals(targetAccountId)) {
+            return TransactionResult.SAME_ACCOUNT;
+        }
+        BankAccount sourceAccount = selectAccount(sourceAccountId);
+        BankAccount targetAccount = selectAccount(targetAccountId);
+        if (sourceAccount == null || targetAccount == null) {
+            return TransactionResult.UNKNOWN_ACCOUNT;
+        }
+        TransactionResult result;
+        long journalPosition = -1;
+        // The target is locked too, so a checkpoint sees the journal record and the pending credit together
+        BankAccount.lockBoth(sourceAccount, targetAccount);
+        try {
+            result = sourceAccount.tryWithdraw(amount, TransactionLog.TRANSFER_OUT);
+            if (result == TransactionResult.SUCCESS) {
+                store.addPendingCredits(targetAccount.record(), amount);
+                if (journal != null) {
+                    journalPosition = journal.appendTransfer(sourceAccountId, targetAccountId, amount);
+                    store.setJournalPosition(sourceAccount.record(), journalPosition);
+                    store.setJournalPosition(targetAccount.record(), journalPosition);
+                }
+            }
+        } finally {
+            BankAccount.unlockBoth(sourceAccount, targetAccount);
+        }
+        awaitJournal(journalPosition);
+        return result;
+    }
+
+    /**
+     * Hands an operation to the fraud monitor, if there is one.
+     */
+    private void watch(byte kind, String accountId, String targetAccountId, long amount, TransactionResult result) {
+        FraudMonitor monitor = fraudMonitor;
+        if (monitor != null) {
+            monitor.record(kind, accountId, targetAccountId, amount, result);
+        }
+    }
+
+    /**
+     * Second phase of a transfer started with {@link #debitForTransfer(String, String, long)}:
+     * puts the money into the target account. The journal already holds the transfer.
+     * 
+     * @param targetAccountId The ID of the target account.
+     * @param amount          The amount to transfer in cents.
+     */
+    void creditTransfer(String targetAccountId, long amount) {
+        BankAccount targetAccount = selectAccount(targetAccountId);
+        targetAccount.lock();
+        try {
+            targetAccount.tryDeposit(amount, TransactionLog.TRANSFER_IN);
+            store.addPendingCredits(targetAccount.record(), -amount);
+        } finally {
+            targetAccount.unlock();
+        }
+    }
+
+    /**
+     * Waits until a journal record is on disk. Called after the account locks are released,
+     * so other operations can join the same sync.
+     * 
+     * @param journalPosition The position returned by the journal, or -1 if nothing was written.
+     */
+    private void awaitJournal(long journalPosition) {
+        if (journalPosition >= 0 && !deferJournalSync) {
+            journal.awaitDurable(journalPosition);
+        }
+    }
+
+    /**
+     * Lets operations return before their journal records are on disk. The caller then makes
+     * whole groups of operations durable at once with {@link #syncJournal()}.
+     * 
+     * @param defer True to defer journal syncs, false to sync every operation again.
+     */
+    void setDeferJournalSync(boolean defer) {
+        this.deferJournalSync = defer;
+    }
+
+    /**
+     * Waits until every operation journaled so far is on disk.
+     */
+    void syncJournal() {
+        TransactionJournal current = journal;
+        if (current != null) {
+            current.awaitDurable(current.position());
+        }
+    }
+
+    /**
+     * Stops the timers and the fraud monitor, writes the remaining events and flushes and closes the journal, if there is one.
+     */
+    public void close() {
+        timers.shutdownNow();
+        events.close();
+        if (fraudMonitor != null) {
+            fraudMonitor.close();
+        }
+        synchronized (this) {
+            if (checkpointer != null) {
+                checkpointer.shutdown(); // Lets a running checkpoint finish
+                try {
+                    checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Verifies if the entered PIN is correct for the given account ID. A wrong PIN is reported on the event sink.
+     * 
+     * @param accountId The account ID.
+     * @param inputPin  The PIN entered by the user.
+     * @return True if the PIN is correct, otherwise false.
+     */
+    public boolean verifyPin(String accountId, String inputPin) {
+        TransactionResult result = tryVerifyPin(accountId, inputPin);
+        int attemptsLeft = result == TransactionResult.INCORRECT_PIN ? remainingPinAttempts(accountId) : 0;
+        events.publish(EventSink.Type.VERIFY_PIN, result, accountId, null, 0, 0, attemptsLeft);
+        return result == TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Verifies the entered PIN without any output. The third wrong PIN in a row locks the account.
+     * The account's lock flag, failure count and PIN hash are all read from one store record.
+     * 
+     * @param accountId The account ID.
+     * @param inputPin  The PIN entered by the user.
+     * @return SUCCESS, INCORRECT_PIN, UNKNOWN_ACCOUNT, or ACCOUNT_LOCKED if the account was already locked.
+     */
+    public TransactionResult tryVerifyPin(String accountId, String inputPin) {
+        long start = System.nanoTime();
+        TransactionResult result = checkPin(accountId, inputPin);
+        if (result != TransactionResult.SUCCESS) { // Unknown accounts too: guessing account IDs is a scan as well
+            watch(FraudMonitor.PIN_FAILURE, accountId, null, 0, result);
+        }
+        return metrics.record(Operation.VERIFY_PIN, start, result);
+    }
+
+    private TransactionResult checkPin(String accountId, String inputPin) {
+        long id = AccountStore.parseId(accountId);
+        int record = store.find(id);
+        if (record < 0) {
+            return TransactionResult.UNKNOWN_ACCOUNT;
+        }
+        long inputHash = AccountStore.hashPin(id, inputPin);
+
+        store.lock(record);
+        try {
+            if (store.isLocked(record)) {
+                return TransactionResult.ACCOUNT_LOCKED;
+            }
+            if (store.pinHash(record) == inputHash) {
+                store.setFailedAttempts(record, 0); // Reset failed attempts on successful login
+                return TransactionResult.SUCCESS;
+            }
+            int attempts = store.failedAttempts(record) + 1;
+            store.setFailedAttempts(record, attempts);
+            if (attempts >= MAX_PIN_ATTEMPTS) {
+                store.lockUntil(record, System.currentTimeMillis() + lockoutMillis);
+            }
+            return TransactionResult.INCORRECT_PIN;
+        } finally {
+            store.unlock(record);
+        }
+    }
+
+    /**
+     * Returns how many more wrong PINs the account accepts before it is locked.
+     * 
+     * @param accountId The account ID.
+     * @return The remaining attempts, 0 if the account is locked or does not exist.
+     */
+    public int remainingPinAttempts(String accountId) {
+        int record = store.find(AccountStore.parseId(accountId));
+        if (record < 0) {
+            return 0;
+        }
+        store.lock(record);
+        try {
+            return store.isLocked(record) ? 0 : Math.max(0, MAX_PIN_ATTEMPTS - store.failedAttempts(record));
+        } finally {
+            store.unlock(record);
+        }
+    }
+
+    /**
+     * Locks an account, as if too many wrong PINs had been entered.
+     * 
+     * @param accountId The account ID.
+     */
+    void lockAccount(String accountId) {
+        int record = store.find(AccountStore.parseId(accountId));
+        if (record >= 0) {
+            store.lock(record);
+            try {
+                store.lockUntil(record, System.currentTimeMillis() + lockoutMillis);
+            } finally {
+                store.unlock(record);
+            }
+        }
+    }
+
+    /**
+     * Allows the user to select an account by its ID.
+     * 
+     * @param accountId The ID of the account to select.
+     * @return The selected bank account, or null if the account ID is invalid.
+     */
+    public BankAccount selectAccount(String accountId) {
+        long start = System.nanoTime();
+        int record = store.find(AccountStore.parseId(accountId));
+        metrics.record(Operation.SELECT_ACCOUNT, start);
+        return record < 0 ? null : new BankAccount(store, record);
+    }
+
+    /**
+     * Displays the current balance in the user's account.
+     * 
+     * @param account The user's bank account.
+     */
+    public void checkBalance(BankAccount account) {
+        System.out.println("Your current balance is: $" + Money.format(account.getBalance()));
+    }
+
+    /**
+     * Displays one page of the transaction history of the user's account, newest entries first.
+     * 
+     * @param account The user's bank account.
+     * @param page    The page to show, starting at 0 for the most recent transactions.
+     * @return True if there are older transactions on a following page.
+     */
+    public boolean showTransactionHistory(BankAccount account, int page) {
+        List<String> lines = new ArrayList<>(HISTORY_PAGE_SIZE);
+        boolean hasMore = formatTransactionHistory(account, page, lines);
+        if (page == 0) {
+            System.out.println(lines.isEmpty() ? "No transactions found." : "Transaction History:");
+        }
+        for (String line : lines) {
+            System.out.println(line);
+        }
+        return hasMore;
+    }
+
+    /**
+     * Formats one page of the transaction history of an account, newest entries first.
+     * 
+     * @param account The bank account.
+     * @param page    The page to format, starting at 0 for the most recent transactions.
+     * @param lines   Receives the formatted entries.
+     * @return True if there are older transactions on a following page.
+     */
+    public boolean formatTransactionHistory(BankAccount account, int page, List<String> lines) {
+        long start = System.nanoTime();
+        boolean hasMore = account.formatHistoryPage(page, HISTORY_PAGE_SIZE, lines);
+        metrics.record(Operation.HISTORY, start);
+        return hasMore;
+    }
+
+    /**
+     * Formats one page of the transactions of an account that match a filter, newest first.
+     * 
+     * @param account The bank account.
+     * @param filter  The time range, types and amount range to match.
+     * @param before  -1 for the most recent matches, otherwise the value returned for the previous page.
+     * @param lines   Receives the formatted entries.
+     * @return The value to pass as before for the next page, or -1 if there are no more matches.
+     */
+    public long formatTransactionHistory(BankAccount account, TransactionLog.Filter filter, long before, List<String> lines) {
+        long start = System.nanoTime();
+        long next = account.formatHistory(filter, before, HISTORY_PAGE_SIZE, lines);
+        metrics.record(Operation.HISTORY, start);
+        return next;
+    }
+
+    /**
+     * Displays the balance converted to another currency.
+     * 
+     * @param account      The user's bank account.
+     * @param exchangeRate The exchange rate for conversion in micro-units.
+     */
+    public void showConvertedBalance(BankAccount account, long exchangeRate) {
+        long convertedBalance = account.convertToCurrency(exchangeRate, RoundingMode.HALF_EVEN);
+        System.out.println("Your balance in the selected currency: $" + Money.format(convertedBalance));
+    }
+
+    /**
+     * Allows the user to change their PIN after verifying the current one. The outcome is reported on the event sink.
+     * 
+     * @param accountId The ID of the account.
+     * @param oldPin    The current PIN.
+     * @param newPin    The new PIN.
+     * @return SUCCESS, or INCORRECT_PIN if the current PIN was not accepted.
+     */
+    public TransactionResult changePin(String accountId, String oldPin, String newPin) {
+        TransactionResult result = verifyPin(accountId, oldPin) ? tryChangePin(accountId, newPin) : TransactionResult.INCORRECT_PIN;
+        events.publish(EventSink.Type.CHANGE_PIN, result, accountId, null, 0, 0, 0);
+        return result;
+    }
+
+    /**
+     * Sets a new PIN and records it in the journal, without any output. The caller must have
+     * verified the current PIN.
+     * 
+     * @param accountId The ID of the account.
+     * @param newPin    The new PIN, 1 to {@value #MAX_PIN_LENGTH} characters.
+     * @return SUCCESS, INVALID_PIN, or UNKNOWN_ACCOUNT.
+     */
+    public TransactionResult tryChangePin(String accountId, String newPin) {
+        if (!isValidPin(newPin)) {
+            return TransactionResult.INVALID_PIN;
+        }
+        BankAccount account = selectAccount(accountId);
+        if (account == null) {
+            return TransactionResult.UNKNOWN_ACCOUNT;
+        }
+        long pinHash = AccountStore.hashPin(AccountStore.parseId(accountId), newPin);
+        long journalPosition = -1;
+        account.lock();
+        try {
+            store.setPinHash(account.record(), pinHash);
+            if (journal != null) {
+                journalPosition = journal.appendChangePin(accountId, pinHash);
+                store.setJournalPosition(account.record(), journalPosition);
+            }
+        } finally {
+            account.unlock();
+        }
+        awaitJournal(journalPosition);
+        return TransactionResult.SUCCESS;
+    }
+
+    private static boolean isValidPin(String pin) {
+        return pin != null && !pin.isEmpty() && pin.length() <= MAX_PIN_LENGTH;
+    }
+
+    /**
+     * Transfers funds from one account to another within the ATM system. The outcome is reported on the event sink.
+     * 
+     * @param sourceAccountId The ID of the source account.
+     * @param targetAccountId The ID of the target account.
+     * @param amount          The amount to transfer in cents.
+     * @return The result of the transfer.
+     */
+    public TransactionResult transferFunds(String sourceAccountId, String targetAccountId, long amount) {
+        long[] balance = new long[1];
+        TransactionResult result = transfer(sourceAccountId, targetAccountId, amount, balance);
+        events.publish(EventSink.Type.TRANSFER, result, sourceAccountId, targetAccountId, amount, balance[0], 0);
+        return result;
+    }
+
+    /**
+     * Formats events as the messages the console menu shows for them.
+     * 
+     * @param event The event.
+     * @param out   Receives the message.
+     */
+    static void formatMessage(EventSink.Event event, StringBuilder out) {
+        TransactionResult result = event.getResult();
+        switch (event.getType()) {
+            case OPEN_ACCOUNT:
+                if (result == TransactionResult.ACCOUNT_EXISTS) {
+                    out.append("Account ").append(event.getAccountId()).append(" already exists.\n");
+                } else if (result == TransactionResult.INVALID_ACCOUNT_ID) {
+                    out.append("Account IDs must be numbers.\n");
+                } else if (result == TransactionResult.INVALID_PIN) {
+                    out.append("PINs must be 1 to " + MAX_PIN_LENGTH + " characters.\n");
+                }
+                break;
+            case DEPOSIT:
+                if (result == TransactionResult.SUCCESS) {
+                    out.append("Deposit successful. Current balance: $").append(Money.format(event.getBalance())).append('\n');
+                } else if (result == TransactionResult.UNKNOWN_ACCOUNT) {
+                    out.append("Invalid account ID.\n");
+                } else {
+                    out.append("Invalid deposit amount.\n");
+                }
+                break;
+            case WITHDRAW:
+                switch (result) {
+                    case SUCCESS:
+                        out.append("Withdrawal successful. Current balance: $").append(Money.format(event.getBalance())).append('\n');
+                        break;
+                    case UNKNOWN_ACCOUNT:
+                        out.append("Invalid account ID.\n");
+                        break;
+                    case INSUFFICIENT_FUNDS:
+                        out.append("Insufficient balance.\n");
+                        break;
+                    case DAILY_LIMIT_EXCEEDED:
+                        out.append("Exceeded daily withdrawal limit.\n");
+                        break;
+                    default:
+                        out.append("Invalid withdrawal amount.\n");
+                        break;
+                }
+                break;
+            case TRANSFER:
+                switch (result) {
+                    case SUCCESS:
+                        out.append("Transfer successful. $").append(Money.format(event.getAmount())).append(" transferred from account ")
+                                .append(event.getAccountId()).append(" to account ").append(event.getTargetAccountId()).append('\n');
+                        break;
+                    case SAME_ACCOUNT:
+                        out.append("Cannot transfer funds into your own account.\n");
+                        break;
+                    case UNKNOWN_ACCOUNT:
+                        out.append("Invalid account ID(s) provided for transfer.\n");
+                        break;
+                    case DAILY_LIMIT_EXCEEDED:
+                        out.append("Transfer failed. Exceeded daily withdrawal limit.\n");
+                        break;
+                    case INVALID_AMOUNT:
+                        out.append("Invalid transfer amount.\n");
+                        break;
+                    default:
+                        out.append("Transfer failed due to insufficient funds.\n");
+                        break;
+                }
+                break;
+            case VERIFY_PIN:
+                if (result == TransactionResult.ACCOUNT_LOCKED) {
+                    out.append("Account is locked due to multiple failed attempts.\n");
+                } else if (result == TransactionResult.UNKNOWN_ACCOUNT) {
+                    out.append("Invalid account ID.\n");
+                } else if (result != TransactionResult.SUCCESS && event.getAttemptsLeft() == 0) {
+                    out.append("Account locked due to multiple failed attempts. Your account is temporarily blocked.\n");
+                } else if (result != TransactionResult.SUCCESS) {
+                    out.append("Incorrect PIN. You have ").append(event.getAttemptsLeft()).append(" chance(s) left.\n");
+                }
+                break;
+            case CHANGE_PIN:
+                if (result == TransactionResult.INVALID_PIN) {
+                    out.append("PINs must be 1 to " + MAX_PIN_LENGTH + " characters.\n");
+                } else {
+                    out.append(result == TransactionResult.SUCCESS ? "PIN successfully changed.\n" : "Incorrect current PIN.\n");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Transfers funds from one account to another, without any output.
+     * Both accounts are locked for the whole transfer, so the balance check, the withdrawal
+     * and the deposit happen as one step.
+     * 
+     * @param sourceAccountId The ID of the source account.
+     * @param targetAccountId The ID of the target account.
+     * @param amount          The amount to transfer in cents.
+     * @return The result of the transfer.
+     */
+    public TransactionResult tryTransfer(String sourceAccountId, String targetAccountId, long amount) {
+        return transfer(sourceAccountId, targetAccountId, amount, null);
+    }
+
+    /**
+     * Transfers funds, and on success stores the source account's new balance as read under the
+     * account locks.
+     *
+     * @param balance Receives the new balance in its first element, may be null.
+     */
+    private TransactionResult transfer(String sourceAccountId, String targetAccountId, long amount, long[] balance) {
+        long start = System.nanoTime();
+        TransactionResult result = transferAndJournal(sourceAccountId, targetAccountId, amount, balance);
+        watch(FraudMonitor.TRANSFER, sourceAccountId, targetAccountId, amount, result);
+        return metrics.record(Operation.TRANSFER, start, result);
+    }
+
+    private TransactionResult transferAndJournal(String sourceAccountId, String targetAccountId, long amount, long[] balance) {
+        if (sourceAccountId.equals(targetAccountId)) {
+            return TransactionResult.SAME_ACCOUNT;
+        }
+
+        BankAccount sourceAccount = selectAccount(sourceAccountId);
+        BankAccount targetAccount = selectAccount(targetAccountId);
+        if (sourceAccount == null || targetAccount == null) {
+            return TransactionResult.UNKNOWN_ACCOUNT;
+        }
+
+        TransactionResult result;
+        long journalPosition = -1;
+        BankAccount.lockBoth(sourceAccount, targetAccount);
+        try {
+            result = sourceAccount.tryWithdraw(amount, TransactionLog.TRANSFER_OUT);
+            if (result == TransactionResult.SUCCESS) {
+                targetAccount.tryDeposit(amount, TransactionLog.TRANSFER_IN);
+                if (journal != null) {
+                    journalPosition = journal.appendTransfer(sourceAccountId, targetAccountId, amount);
+                    store.setJournalPosition(sourceAccount.record(), journalPosition);
+                    store.setJournalPosition(targetAccount.record(), journalPosition);
+                }
+                if (balance != null) {
+                    balance[0] = store.balance(sourceAccount.record());
+                }
+            }
+        } finally {
+            BankAccount.unlockBoth(sourceAccount, targetAccount);
+        }
+        awaitJournal(journalPosition);
+        return result;
+    }
+
+    /**
+     * Reads an amount such as "12.50" from the console.
+     * 
+     * @param scanner The console scanner.
+     * @return The amount in cents, or -1 if the input is not a valid amount.
+     */
+    private static long readAmount(Scanner scanner) {
+        try {
+            return Money.parse(scanner.next());
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs a file of operations with {@link BatchProcessor} and prints the report as JSON.
+     * 
+     * @param args The command-line arguments:
+     *             --batch &lt;operations file&gt; [--journal &lt;file&gt;] [--snapshot &lt;file&gt;] [--threads &lt;n&gt;]
+     *             [--rejects &lt;file&gt;] [--rates &lt;file&gt; --report &lt;currency&gt;]. With --snapshot, the
+     *             accounts are loaded from the snapshot and a full snapshot is written when the batch is
+     *             done. With --report, every balance is converted to the currency with the rates file when
+     *             the batch is done and written to standard error, see {@link #writeConvertedBalances}.
+     * @throws IOException If a file cannot be read or written.
+     */
+    private static void runBatch(String[] args) throws IOException {
+        Path operationsFile = null;
+        Path journalFile = null;
+        Path snapshotFile = null;
+        Path rejectsFile = null;
+        Path ratesFile = null;
+        String reportCurrency = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--batch":
+                    operationsFile = Paths.get(args[i + 1]);
+                    break;
+                case "--journal":
+                    journalFile = Paths.get(args[i + 1]);
+                    break;
+                case "--snapshot":
+                    snapshotFile = Paths.get(args[i + 1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rejects":
+                    rejectsFile = Paths.get(args[i + 1]);
+                    break;
+                case "--rates":
+                    ratesFile = Paths.get(args[i + 1]);
+                    break;
+                case "--report":
+                    reportCurrency = args[i + 1].toUpperCase(Locale.ROOT);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (operationsFile == null || (reportCurrency != null && ratesFile == null)) {
+            throw new IllegalArgumentException("Usage: ATM --batch <operations file> [--journal <file>] [--snapshot <file>]"
+                    + " [--threads <n>] [--rejects <file>] [--rates <file> --report <currency>]");
+        }
+
+        ATM atm = journalFile != null || snapshotFile != null ? ATM.recover(journalFile, snapshotFile) : new ATM();
+        Writer rejects = rejectsFile != null ? Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8) : null;
+        try {
+            BatchProcessor.Report report = new BatchProcessor(atm, threads).process(operationsFile, rejects);
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            report.writeJson(out);
+            out.flush();
+            if (reportCurrency != null) {
+                atm.setExchangeRates(ExchangeRates.load(ratesFile), 0);
+                Writer balances = new BufferedWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8));
+                long total = atm.writeConvertedBalances(reportCurrency, RoundingMode.HALF_EVEN, balances);
+                balances.write("TOTAL " + Money.format(total) + "\n");
+                balances.flush();
+            }
+            if (snapshotFile != null) {
+                atm.checkpointAndWait(true);
+            }
+        } finally {
+            if (rejects != null) {
+                rejects.close();
+            }
+            atm.close();
+        }
+    }
+
+    /**
+     * Main method to run the ATM program.
+     * 
+     * @param args Command-line arguments. An optional journal file path; when given, accounts
+     *             are restored from it and every operation is written to it. An optional snapshot
+     *             file path after it speeds up the restore and is updated on exit. With --batch, a file
+     *             of operations is run instead of the interactive menu (see {@link #runBatch(String[])}).
+     * @throws IOException If a batch file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].startsWith("--")) {
+            runBatch(args);
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+
+        ATM atm;
+        if (args.length > 1) {
+            atm = ATM.recover(Paths.get(args[0]), Paths.get(args[1])); // Restore accounts from the snapshot and journal
+        } else if (args.length > 0) {
+            atm = ATM.recover(Paths.get(args[0])); // Restore accounts from the journal
+        } else {
+            atm = new ATM();
+        }
+
+        if (atm.store.accountCount() == 0) {
+            // Initialize multiple accounts with their respective balances and PINs
+            atm.openAccount("123", Money.of(500, 0), "1234"); // Account 1 with $500 balance
+            atm.openAccount("456", Money.of(1000, 0), "4567"); // Account 2 with $1000 balance
+        }
+
+        atm.events.flush(); // The menu prints directly, so pending messages must come first
+        System.out.print("Enter your account ID: ");
+        String accountId = scanner.nextLine();
+
+        BankAccount selectedAccount = atm.selectAccount(accountId);
+
+        if (selectedAccount != null) {
+            boolean pinVerified = false;
+            int attemptsLeft = 2;
+
+            while (attemptsLeft >= 0 && !pinVerified) {
+                System.out.print("Enter your PIN: ");
+                String enteredPin = scanner.nextLine();
+
+                if (atm.verifyPin(accountId, enteredPin)) {
+                    pinVerified = true;
+                    boolean exit = false;
+
+                    while (!exit) {
+                        atm.events.flush();
+                        System.out.println("\nATM Menu:");
+                        System.out.println("1. Check Balance");
+                        System.out.println("2. Deposit");
+                        System.out.println("3. Withdraw");
+                        System.out.println("4. View Transaction History");
+                        System.out.println("5. Convert Balance to Another Currency");
+                        System.out.println("6. Change PIN");
+                        System.out.println("7. Transfer Funds");
+                        System.out.println("8. Exit");
+                        System.out.print("Choose an option: ");
+                        int choice = scanner.nextInt();
+
+                        switch (choice) {
+                            case 1:
+                                atm.checkBalance(selectedAccount);
+                                break;
+                            case 2:
+                                System.out.print("Enter amount to deposit: $");
+                                long depositAmount = readAmount(scanner);
+                                atm.deposit(accountId, depositAmount);
+                                break;
+                            case 3:
+                                System.out.print("Enter amount to withdraw: $");
+                                long withdrawAmount = readAmount(scanner);
+                                atm.withdraw(accountId, withdrawAmount);
+                                break;
+                            case 4:
+                                int page = 0;
+                                while (atm.showTransactionHistory(selectedAccount, page)) {
+                                    System.out.print("Show older transactions? (yes/no): ");
+                                    if (!scanner.next().equalsIgnoreCase("yes")) {
+                                        break;
+                                    }
+                                    page++;
+                                }
+                                break;
+                            case 5:
+                                System.out.print("Enter the exchange rate: ");
+                                try {
+                                    long exchangeRate = Money.parseRate(scanner.next());
+                                    atm.showConvertedBalance(selectedAccount, exchangeRate);
+                                } catch (NumberFormatException | ArithmeticException e) {
+                                    System.out.println("Invalid exchange rate.");
+                                }
+                                break;
+                            case 6:
+                                System.out.print("Enter your current PIN: ");
+                                scanner.nextLine(); // consume newline
+                                String oldPin = scanner.nextLine();
+                                System.out.print("Enter your new PIN: ");
+                                String newPin = scanner.nextLine();
+                                atm.changePin(accountId, oldPin, newPin);
+                                break;
+                            case 7:
+                                System.out.print("Enter target account ID: ");
+                                scanner.nextLine(); // consume newline
+                                String targetAccountId = scanner.nextLine();
+                                System.out.print("Enter amount to transfer: $");
+                                long transferAmount = readAmount(scanner);
+                                atm.transferFunds(accountId, targetAccountId, transferAmount);
+                                break;
+                            case 8:
+                                exit = true;
+                                System.out.println("Thank you for using the ATM. Goodbye!");
+                                break;
+                            default:
+                                System.out.println("Invalid option. Please try again.");
+                                break;
+                        }
+                    }
+                } else {
+                    atm.events.flush();
+                    attemptsLeft--;
+                    if (attemptsLeft < 0) {
+                        System.out.println("Incorrect PIN. Your account is locked due to multiple failed attempts.");
+                        atm.lockAccount(accountId);
+                    } else {
+                        System.out.println("Incorrect PIN. You have " + attemptsLeft + " chance(s) left.");
+                    }
+                }
+            }
+        } else {
+            System.out.println("Invalid account ID.");
+        }
+
+        if (args.length > 1) {
+            atm.checkpointAndWait(false);
+        }
+        atm.close();
+        scanner.close();
+    }
+}
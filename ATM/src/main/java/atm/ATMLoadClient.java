@@ -0,0 +1,148 @@
+package atm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load generator for {@link ATMServer}.
+ *
+ * It opens many terminal sessions at once, logs each one in to a test account, and then sends a
+ * mix of balance checks, deposits, withdrawals, transfers and history requests with a random think
+ * time between requests. At the end it prints the request rate and the latency percentiles.
+ *
+ * Usage: ATMLoadClient &lt;host&gt; &lt;port&gt; &lt;sessions&gt; &lt;seconds&gt; [think millis] [accounts]
+ * The server must have been started with --accounts, so that accounts "1" to "accounts" exist.
+ */
+public class ATMLoadClient {
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong failedSessions = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: ATMLoadClient <host> <port> <sessions> <seconds> [think millis] [accounts]");
+            return;
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int sessions = Integer.parseInt(args[2]);
+        long durationMillis = Long.parseLong(args[3]) * 1000;
+        int thinkMillis = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+        int accounts = args.length > 5 ? Integer.parseInt(args[5]) : sessions;
+
+        new ATMLoadClient().run(host, port, sessions, durationMillis, thinkMillis, accounts);
+    }
+
+    private void run(String host, int port, int sessions, long durationMillis, int thinkMillis, int accounts)
+            throws InterruptedException {
+        ExecutorService executor = ATMServer.newSessionExecutor("atm-load");
+        CountDownLatch finished = new CountDownLatch(sessions);
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMillis;
+
+        for (int i = 0; i < sessions; i++) {
+            String accountId = String.valueOf(i % accounts + 1);
+            String targetId = String.valueOf((i + 1) % accounts + 1);
+            executor.execute(() -> {
+                try {
+                    runSession(host, port, accountId, targetId, deadline, thinkMillis);
+                } catch (IOException e) {
+                    failedSessions.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        executor.shutdown();
+
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.println("Sessions:        " + sessions + " (" + failedSessions.get() + " failed)");
+        System.out.println("Requests:        " + requests.get() + " (" + errors.get() + " errors)");
+        System.out.printf("Requests/second: %.0f%n", requests.get() / seconds);
+        LatencyHistogram.Snapshot latency = latencies.snapshot();
+        System.out.println("Latency p50:     " + latency.percentile(0.50) / 1000 + " us");
+        System.out.println("Latency p90:     " + latency.percentile(0.90) / 1000 + " us");
+        System.out.println("Latency p99:     " + latency.percentile(0.99) / 1000 + " us");
+        System.out.println("Latency p99.9:   " + latency.percentile(0.999) / 1000 + " us");
+        System.out.println("Latency max:     " + latency.getMaxNanos() / 1000 + " us");
+    }
+
+    private void runSession(String host, int port, String accountId, String targetId, long deadline, int thinkMillis)
+            throws IOException, InterruptedException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 256);
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 256)) {
+            socket.setTcpNoDelay(true);
+            if (!request(in, out, "LOGIN " + accountId + " 1234")) {
+                throw new IOException("Login failed for account " + accountId);
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.currentTimeMillis() < deadline) {
+                if (thinkMillis > 0) {
+                    Thread.sleep(random.nextInt(2 * thinkMillis + 1));
+                }
+                int choice = random.nextInt(100);
+                String command;
+                if (choice < 50) {
+                    command = "BALANCE";
+                } else if (choice < 70) {
+                    command = "DEPOSIT " + (1 + random.nextInt(100));
+                } else if (choice < 85) {
+                    command = "WITHDRAW " + (1 + random.nextInt(20));
+                } else if (choice < 95) {
+                    command = "TRANSFER " + targetId + " 1.00";
+                } else {
+                    command = "HISTORY";
+                }
+                request(in, out, command);
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends one command, reads the whole response and records its latency.
+     *
+     * @return True if the server answered OK.
+     */
+    private boolean request(BufferedReader in, Writer out, String command) throws IOException {
+        long start = System.nanoTime();
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        String response = in.readLine();
+        if (response == null) {
+            throw new IOException("Server closed the connection");
+        }
+        if (command.equals("HISTORY") && response.startsWith("OK ")) {
+            int lines = Integer.parseInt(response.split(" ")[1]);
+            for (int i = 0; i < lines; i++) {
+                in.readLine();
+            }
+        }
+        latencies.recordSince(start);
+
+        requests.incrementAndGet();
+        boolean ok = response.startsWith("OK");
+        if (!ok && !response.startsWith("ERR INSUFFICIENT_FUNDS") && !response.startsWith("ERR DAILY_LIMIT_EXCEEDED")) {
+            errors.incrementAndGet();
+        }
+        return ok;
+    }
+}
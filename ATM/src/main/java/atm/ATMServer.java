@@ -0,0 +1,492 @@
+package atm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+
+/**
+ * A TCP front end that serves the ATM menu to many terminals at once.
+ *
+ * Each connection is one terminal session running on its own thread. On Java 21 and later the
+ * sessions run on virtual threads, so tens of thousands of mostly idle terminals cost only a few
+ * kilobytes each; on older runtimes they fall back to platform threads with small stacks.
+ *
+ * The protocol is one command per line, answered by one line starting with OK or ERR:
+ * <pre>
+ * LOGIN &lt;account&gt; &lt;pin&gt;        OK | ERR INCORRECT_PIN &lt;attempts left&gt; | ERR ACCOUNT_LOCKED
+ * BALANCE                     OK &lt;balance&gt;
+ * DEPOSIT &lt;amount&gt;            OK &lt;balance&gt; | ERR &lt;reason&gt;
+ * WITHDRAW &lt;amount&gt;           OK &lt;balance&gt; | ERR &lt;reason&gt;
+ * HISTORY [page]              OK &lt;lines&gt; &lt;MORE|END&gt;, followed by that many lines | ERR INVALID_PAGE
+ * STATEMENT &lt;yyyy-mm&gt;         OK &lt;deposits&gt; &lt;withdrawals&gt; &lt;transfers in&gt; &lt;transfers out&gt;
+ * CONVERT &lt;rate|currency&gt;     OK &lt;converted balance&gt;
+ * CHPIN &lt;old pin&gt; &lt;new pin&gt;   OK | ERR &lt;reason&gt;
+ * TRANSFER &lt;target&gt; &lt;amount&gt;  OK &lt;balance&gt; | ERR &lt;reason&gt;
+ * SEARCH [&lt;key&gt;=&lt;value&gt; ...]  OK &lt;lines&gt; &lt;cursor|END&gt;, followed by that many lines
+ * QUIT                        BYE
+ * </pre>
+ * All commands except LOGIN and QUIT need a successful LOGIN first. A line longer than
+ * {@value #MAX_LINE_LENGTH} characters is answered with ERR LINE_TOO_LONG, and the rest of it is
+ * skipped.
+ *
+ * SEARCH finds the transactions that match all of its optional arguments, newest first:
+ * type=&lt;DEPOSIT|WITHDRAWAL|TRANSFER_IN|TRANSFER_OUT,...&gt;, min=&lt;amount&gt;, max=&lt;amount&gt;,
+ * from=&lt;yyyy-mm-dd&gt; (inclusive) and to=&lt;yyyy-mm-dd&gt; (exclusive). The cursor of a page,
+ * passed back as cursor=&lt;cursor&gt; with the same arguments, gives the next page.
+ */
+public class ATMServer implements AutoCloseable {
+    private static final int SESSION_BUFFER_SIZE = 256;
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    private final ATM atm;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private Thread acceptThread;
+
+    /**
+     * Creates a server bound to a local port.
+     *
+     * @param atm  The ATM shared by all sessions.
+     * @param port The TCP port, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public ATMServer(ATM atm, int port) throws IOException {
+        this.atm = atm;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(port), 4096);
+        this.sessions = newSessionExecutor("atm-session");
+    }
+
+    /**
+     * Returns an executor that runs every task on its own thread: a virtual thread when the
+     * runtime supports them, otherwise a platform thread with a small stack.
+     *
+     * @param name The name prefix of platform threads.
+     * @return The executor.
+     */
+    static ExecutorService newSessionExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(null, task, name + "-" + count.incrementAndGet(), 128 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start() {
+        acceptThread = new Thread(this::acceptLoop, "atm-accept");
+        acceptThread.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of connected sessions.
+     */
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sessions.execute(() -> runSession(socket));
+            } catch (SocketException e) {
+                return; // Server socket closed
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serves one terminal until it quits or disconnects.
+     */
+    private void runSession(Socket socket) {
+        openSessions.incrementAndGet();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8), SESSION_BUFFER_SIZE);
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), SESSION_BUFFER_SIZE)) {
+            String accountId = null;
+            StringBuilder line = new StringBuilder();
+            while (readLine(in, line)) {
+                if (line.length() > MAX_LINE_LENGTH) {
+                    out.write("ERR LINE_TOO_LONG\n");
+                    out.flush();
+                    continue;
+                }
+                String[] words = line.toString().trim().split("\\s+");
+                String command = words[0].toUpperCase();
+                if (command.equals("QUIT")) {
+                    out.write("BYE\n");
+                    out.flush();
+                    return;
+                }
+                if (command.equals("LOGIN")) {
+                    accountId = login(words, out);
+                } else if (accountId == null) {
+                    out.write("ERR NOT_LOGGED_IN\n");
+                } else {
+                    handle(command, words, accountId, out);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The terminal disconnected
+        } finally {
+            openSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads one line into a buffer, keeping at most {@value #MAX_LINE_LENGTH} + 1 characters of it,
+     * so a terminal that never sends a line break cannot fill the memory.
+     *
+     * @return False at the end of the stream.
+     */
+    private static boolean readLine(Reader in, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return line.length() > 0;
+            }
+            if (line.length() <= MAX_LINE_LENGTH) {
+                line.append((char) c);
+            }
+        }
+        return true;
+    }
+
+    private String login(String[] words, Writer out) throws IOException {
+        if (words.length != 3) {
+            out.write("ERR USAGE LOGIN <account> <pin>\n");
+            return null;
+        }
+        TransactionResult result = atm.tryVerifyPin(words[1], words[2]);
+        if (result == TransactionResult.SUCCESS) {
+            out.write("OK\n");
+            return words[1];
+        }
+        if (result == TransactionResult.INCORRECT_PIN) {
+            int attemptsLeft = atm.remainingPinAttempts(words[1]);
+            out.write(attemptsLeft == 0 ? "ERR ACCOUNT_LOCKED\n" : "ERR INCORRECT_PIN " + attemptsLeft + "\n");
+        } else {
+            out.write("ERR " + result.name() + "\n");
+        }
+        return null;
+    }
+
+    private void handle(String command, String[] words, String accountId, Writer out) throws IOException {
+        try {
+            switch (command) {
+                case "BALANCE":
+                    writeBalance(accountId, out);
+                    break;
+                case "DEPOSIT":
+                    writeResult(atm.tryDeposit(accountId, Money.parse(argument(words, 1))), accountId, out);
+                    break;
+                case "WITHDRAW":
+                    writeResult(atm.tryWithdraw(accountId, Money.parse(argument(words, 1))), accountId, out);
+                    break;
+                case "TRANSFER":
+                    writeResult(atm.tryTransfer(accountId, argument(words, 1), Money.parse(argument(words, 2))), accountId, out);
+                    break;
+                case "HISTORY":
+                    int page = words.length > 1 ? parsePage(words[1]) : 0;
+                    if (page < 0) {
+                        out.write("ERR INVALID_PAGE\n");
+                        break;
+                    }
+                    List<String> lines = new ArrayList<>();
+                    boolean hasMore = atm.formatTransactionHistory(atm.selectAccount(accountId), page, lines);
+                    out.write("OK " + lines.size() + (hasMore ? " MORE\n" : " END\n"));
+                    for (String entry : lines) {
+                        out.write(entry);
+                        out.write('\n');
+                    }
+                    break;
+                case "STATEMENT":
+                    TransactionLog.Statement statement = atm.selectAccount(accountId).getStatement(YearMonth.parse(argument(words, 1)));
+                    out.write("OK " + Money.format(statement.getTotal(TransactionLog.DEPOSIT))
+                            + " " + Money.format(statement.getTotal(TransactionLog.WITHDRAWAL))
+                            + " " + Money.format(statement.getTotal(TransactionLog.TRANSFER_IN))
+                            + " " + Money.format(statement.getTotal(TransactionLog.TRANSFER_OUT)) + "\n");
+                    break;
+                case "CONVERT":
+                    String target = argument(words, 1).toUpperCase(Locale.ROOT);
+                    ExchangeRates rates = atm.getExchangeRates();
+                    ExchangeRates.Table table = rates == null ? null : rates.current();
+                    long converted = table != null && table.contains(target) && table.contains(BankAccount.CURRENCY)
+                            ? atm.selectAccount(accountId).convertToCurrency(table, target, RoundingMode.HALF_EVEN)
+                            : atm.selectAccount(accountId).convertToCurrency(Money.parseRate(target), RoundingMode.HALF_EVEN);
+                    out.write("OK " + Money.format(converted) + "\n");
+                    break;
+                case "SEARCH":
+                    search(words, atm.selectAccount(accountId), out);
+                    break;
+                case "CHPIN":
+                    TransactionResult result = atm.tryVerifyPin(accountId, argument(words, 1));
+                    if (result == TransactionResult.SUCCESS) {
+                        result = atm.tryChangePin(accountId, argument(words, 2));
+                    }
+                    out.write(result == TransactionResult.SUCCESS ? "OK\n" : "ERR " + result.name() + "\n");
+                    break;
+                default:
+                    out.write("ERR UNKNOWN_COMMAND\n");
+                    break;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            out.write("ERR INVALID_AMOUNT\n");
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            out.write("ERR USAGE " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Parses a HISTORY page number.
+     *
+     * @return The page, or -1 if the text is not a number.
+     */
+    private static int parsePage(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void search(String[] words, BankAccount account, Writer out) throws IOException {
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        int types = 0;
+        long minAmount = 0;
+        long maxAmount = Long.MAX_VALUE;
+        long before = -1;
+        for (int i = 1; i < words.length; i++) {
+            int equals = words[i].indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("SEARCH arguments are key=value pairs");
+            }
+            String value = words[i].substring(equals + 1);
+            switch (words[i].substring(0, equals).toLowerCase(Locale.ROOT)) {
+                case "type":
+                    for (String type : value.split(",")) {
+                        types |= TransactionLog.Filter.type(typeCode(type));
+                    }
+                    break;
+                case "min":
+                    minAmount = Money.parse(value);
+                    break;
+                case "max":
+                    maxAmount = Money.parse(value);
+                    break;
+                case "from":
+                    from = LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    break;
+                case "to":
+                    to = LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    break;
+                case "cursor":
+                    before = parseCursor(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown SEARCH argument " + words[i]);
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        long next = atm.formatTransactionHistory(account, new TransactionLog.Filter(from, to, types, minAmount, maxAmount), before, lines);
+        out.write("OK " + lines.size() + (next < 0 ? " END\n" : " " + next + "\n"));
+        for (String entry : lines) {
+            out.write(entry);
+            out.write('\n');
+        }
+    }
+
+    private static byte typeCode(String name) {
+        switch (name.toUpperCase(Locale.ROOT)) {
+            case "DEPOSIT":
+                return TransactionLog.DEPOSIT;
+            case "WITHDRAWAL":
+                return TransactionLog.WITHDRAWAL;
+            case "TRANSFER_IN":
+                return TransactionLog.TRANSFER_IN;
+            case "TRANSFER_OUT":
+                return TransactionLog.TRANSFER_OUT;
+            default:
+                throw new IllegalArgumentException("Unknown transaction type " + name);
+        }
+    }
+
+    private static long parseCursor(String value) {
+        try {
+            long cursor = Long.parseLong(value);
+            if (cursor >= 0) {
+                return cursor;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor " + value);
+    }
+
+    private static String argument(String[] words, int index) {
+        if (index >= words.length) {
+            throw new IllegalArgumentException(words[0] + " needs " + index + " argument(s)");
+        }
+        return words[index];
+    }
+
+    private void writeResult(TransactionResult result, String accountId, Writer out) throws IOException {
+        if (result == TransactionResult.SUCCESS) {
+            writeBalance(accountId, out);
+        } else {
+            out.write("ERR " + result.name() + "\n");
+        }
+    }
+
+    private void writeBalance(String accountId, Writer out) throws IOException {
+        out.write("OK " + Money.format(atm.selectAccount(accountId).getBalance()) + "\n");
+    }
+
+    /**
+     * Stops accepting connections and closes the session threads.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     *
+     * @param args &lt;port&gt; [--journal &lt;file&gt;] [--accounts &lt;n&gt;] [--lockout &lt;seconds&gt;]
+     *             [--metrics &lt;seconds&gt;] [--fraud &lt;operations&gt;] [--rates &lt;file&gt;]. With --accounts,
+     *             accounts "1" to "n" are opened with a $1000.00 balance and PIN 1234 if they do not exist yet,
+     *             for load tests. --lockout sets how long an account stays locked after three wrong PINs.
+     *             --metrics prints the latency and rejection metrics at that interval; they are also
+     *             published over JMX as atm:type=Metrics,name="server".
+     *             --fraud turns on the fraud monitor, with a burst limit of that many operations per account
+     *             and minute, and prints its alerts. --rates loads an exchange-rate table for CONVERT
+     *             with a currency code; the file is checked for changes every minute.
+     * @throws IOException If the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ATMServer <port> [--journal <file>] [--accounts <n>] [--lockout <seconds>]"
+                    + " [--metrics <seconds>] [--fraud <operations>] [--rates <file>]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        Path journalFile = null;
+        int testAccounts = 0;
+        long lockoutSeconds = 0;
+        long metricsSeconds = 0;
+        int fraudOperations = 0;
+        Path ratesFile = null;
+        for (int i = 1; i < args.length - 1; i += 2) {
+            if (args[i].equals("--journal")) {
+                journalFile = Paths.get(args[i + 1]);
+            } else if (args[i].equals("--accounts")) {
+                testAccounts = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--lockout")) {
+                lockoutSeconds = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--metrics")) {
+                metricsSeconds = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--fraud")) {
+                fraudOperations = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--rates")) {
+                ratesFile = Paths.get(args[i + 1]);
+            }
+        }
+        ATM atm = journalFile == null ? new ATM() : ATM.recover(journalFile);
+        if (lockoutSeconds > 0) {
+            atm.setLockoutCooldown(TimeUnit.SECONDS.toMillis(lockoutSeconds));
+        }
+        atm.setDeferJournalSync(true); // One journal sync for all test accounts
+        for (int i = 1; i <= testAccounts; i++) {
+            atm.tryOpenAccount(String.valueOf(i), Money.of(1000, 0), "1234");
+        }
+        atm.syncJournal();
+        atm.setDeferJournalSync(false);
+
+        try {
+            atm.getMetrics().register("server");
+        } catch (JMException e) {
+            System.out.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+        if (ratesFile != null) {
+            atm.setExchangeRates(ExchangeRates.load(ratesFile), 60);
+        }
+        if (fraudOperations > 0) {
+            FraudMonitor monitor = new FraudMonitor(64 * 1024, 64 * 1024, (alert, accountId, value, timestamp) ->
+                    System.out.println("ALERT " + alert + (accountId >= 0 ? " account " + accountId : "") + ": " + value));
+            monitor.setBurstLimits(fraudOperations, Long.MAX_VALUE);
+            atm.setFraudMonitor(monitor);
+        }
+        if (metricsSeconds > 0) {
+            atm.startMetricsDump(metricsSeconds, System.out);
+        }
+
+        ATM shared = atm;
+        ATMServer server = new ATMServer(shared, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Exiting anyway
+            }
+            shared.close();
+        }));
+        server.start();
+        System.out.println("ATM server listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,467 @@
+package atm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A binary snapshot file of the accounts of an {@link AccountStore}.
+ *
+ * A full snapshot holds every account. An incremental snapshot holds only the accounts changed
+ * since the previous snapshot of the same chain and is stored next to the full one as
+ * "&lt;file&gt;.1", "&lt;file&gt;.2" and so on. Each file starts with a 64-byte header followed by
+ * fixed-size records sorted by account ID, so a file can be mapped and searched in place without
+ * reading it first.
+ *
+ * Snapshots are written while the ATM keeps running. Each record is copied under its stripe
+ * lock, so it is consistent in itself, and it carries the journal position of the last operation
+ * it includes. Replaying the journal from the position at which the snapshot started, and skipping
+ * every operation an account already includes, brings all accounts to the same point again.
+ */
+public class AccountSnapshot {
+    private static final int MAGIC = 0x41544D53; // "ATMS"
+    private static final int VERSION = 1;
+    private static final int FULL = 0;
+    private static final int INCREMENT = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 72;
+    private static final int RECORDS_PER_CHUNK = (1 << 30) / RECORD_SIZE;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    // Record layout
+    private static final int ID = 0;
+    private static final int BALANCE = 8;
+    private static final int DAILY_LIMIT = 16;
+    private static final int DAILY_WITHDRAWN = 24;
+    private static final int WINDOW_END = 32;
+    private static final int PIN_HASH = 40;
+    private static final int LOCKED_UNTIL = 48;
+    private static final int JOURNAL_POSITION = 56;
+    private static final int FAILED_ATTEMPTS = 64;
+
+    private final int sequence;
+    private final long generation;
+    private final long journalPosition;
+    private final int count;
+    private final MappedByteBuffer[] chunks;
+
+    private AccountSnapshot(int sequence, long generation, long journalPosition, int count, MappedByteBuffer[] chunks) {
+        this.sequence = sequence;
+        this.generation = generation;
+        this.journalPosition = journalPosition;
+        this.count = count;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Maps a full snapshot and the incremental snapshots that belong to it.
+     *
+     * @param file The full snapshot file.
+     * @return The snapshot files, oldest first, or none if the file does not exist.
+     */
+    public static AccountSnapshot[] openChain(Path file) {
+        if (!Files.exists(file)) {
+            return new AccountSnapshot[0];
+        }
+        try {
+            List<AccountSnapshot> chain = new ArrayList<>();
+            AccountSnapshot full = open(file, FULL);
+            chain.add(full);
+            for (int sequence = 1; Files.exists(incrementFile(file, sequence)); sequence++) {
+                AccountSnapshot increment = open(incrementFile(file, sequence), INCREMENT);
+                if (increment.generation != full.generation || increment.sequence != sequence) {
+                    break; // Left over from an older full snapshot
+                }
+                chain.add(increment);
+            }
+            return chain.toArray(new AccountSnapshot[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open snapshot " + file, e);
+        }
+    }
+
+    private static AccountSnapshot open(Path file, int expectedKind) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not an account snapshot");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an account snapshot");
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException("Unsupported account snapshot version");
+            }
+            if (header.getInt() != expectedKind) {
+                throw new IOException(expectedKind == FULL ? "Not a full snapshot" : "Not an incremental snapshot");
+            }
+            int sequence = header.getInt();
+            long generation = header.getLong();
+            long count = header.getLong();
+            long journalPosition = header.getLong();
+            if (count > Integer.MAX_VALUE || channel.size() != HEADER_SIZE + count * RECORD_SIZE) {
+                throw new IOException("Account snapshot is damaged");
+            }
+
+            // Mappings are limited to 2 GB, so large files are mapped in chunks of whole records
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((count + RECORDS_PER_CHUNK - 1) / RECORDS_PER_CHUNK)];
+            for (int i = 0; i < chunks.length; i++) {
+                long first = (long) i * RECORDS_PER_CHUNK;
+                long records = Math.min(RECORDS_PER_CHUNK, count - first);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+            return new AccountSnapshot(sequence, generation, journalPosition, (int) count, chunks);
+        }
+    }
+
+    private static Path incrementFile(Path file, int sequence) {
+        return file.resolveSibling(file.getFileName() + "." + sequence);
+    }
+
+    /**
+     * Counts the distinct accounts of a chain of snapshot files. The full snapshot's count comes
+     * from its header; only the records of the incremental snapshots are read, and each of their
+     * IDs is looked up in the full snapshot by binary search.
+     *
+     * @param chain The snapshot files, oldest first.
+     * @return The number of accounts.
+     */
+    static long countAccounts(AccountSnapshot[] chain) {
+        if (chain.length == 0) {
+            return 0;
+        }
+        long incrementRecords = 0;
+        for (int i = 1; i < chain.length; i++) {
+            incrementRecords += chain[i].count;
+        }
+        long[] ids = new long[Math.toIntExact(incrementRecords)];
+        int next = 0;
+        for (int i = 1; i < chain.length; i++) {
+            for (int entry = 0; entry < chain[i].count; entry++) {
+                ids[next++] = chain[i].id(entry);
+            }
+        }
+        Arrays.sort(ids);
+        long accounts = chain[0].count;
+        for (int i = 0; i < ids.length; i++) {
+            if ((i == 0 || ids[i] != ids[i - 1]) && chain[0].find(ids[i]) < 0) {
+                accounts++;
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Returns the number of accounts in the file.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Returns the position of this snapshot in its chain, 0 for the full snapshot.
+     */
+    int sequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the random number shared by a full snapshot and its incremental snapshots.
+     */
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * Returns the journal position at which the snapshot was started. Replay starts here.
+     */
+    long journalPosition() {
+        return journalPosition;
+    }
+
+    /**
+     * Finds an account by binary search over the mapped records.
+     *
+     * @param id The numeric account ID.
+     * @return The entry index, or -1 if the file does not have the account.
+     */
+    int find(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = id(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private long getLong(int entry, int field) {
+        return chunks[entry / RECORDS_PER_CHUNK].getLong((entry % RECORDS_PER_CHUNK) * RECORD_SIZE + field);
+    }
+
+    long id(int entry) {
+        return getLong(entry, ID);
+    }
+
+    long balance(int entry) {
+        return getLong(entry, BALANCE);
+    }
+
+    long dailyLimit(int entry) {
+        return getLong(entry, DAILY_LIMIT);
+    }
+
+    long dailyWithdrawn(int entry) {
+        return getLong(entry, DAILY_WITHDRAWN);
+    }
+
+    long windowEnd(int entry) {
+        return getLong(entry, WINDOW_END);
+    }
+
+    long pinHash(int entry) {
+        return getLong(entry, PIN_HASH);
+    }
+
+    long lockedUntil(int entry) {
+        return getLong(entry, LOCKED_UNTIL);
+    }
+
+    long journalPosition(int entry) {
+        return getLong(entry, JOURNAL_POSITION);
+    }
+
+    int failedAttempts(int entry) {
+        return chunks[entry / RECORDS_PER_CHUNK].getInt((entry % RECORDS_PER_CHUNK) * RECORD_SIZE + FAILED_ATTEMPTS);
+    }
+
+    /**
+     * Writes a full snapshot of a store, replacing the previous chain.
+     *
+     * Accounts that the store has not loaded from its own snapshot files yet are copied straight
+     * from those files, merged by ID with the accounts in the store.
+     *
+     * @param store           The accounts.
+     * @param file            The full snapshot file.
+     * @param journalPosition The journal position before the first account is copied.
+     * @param journal         The journal, synced before the snapshot replaces the old one. May be null.
+     * @return The generation of the new chain.
+     */
+    public static long writeFull(AccountStore store, Path file, long journalPosition, TransactionJournal journal) {
+        long generation = ThreadLocalRandom.current().nextLong() | 1; // Never 0, which means "no snapshot"
+        try (Writer writer = new Writer(file)) {
+            int records = store.size();
+            long[] ids = new long[records];
+            for (int record = 0; record < records; record++) {
+                ids[record] = store.id(record);
+            }
+            Arrays.parallelSort(ids);
+
+            AccountSnapshot[] sources = store.snapshots(); // Newest first
+            int[] cursors = new int[sources.length];
+            int next = 0;
+            while (true) {
+                long id = next < records ? ids[next] : Long.MAX_VALUE;
+                for (int i = 0; i < sources.length; i++) {
+                    if (cursors[i] < sources[i].count) {
+                        id = Math.min(id, sources[i].id(cursors[i]));
+                    }
+                }
+                if (id == Long.MAX_VALUE) {
+                    break;
+                }
+
+                int record = store.probe(id);
+                boolean written = false;
+                if (record >= 0) {
+                    writer.copy(store, record);
+                    written = true;
+                }
+                for (int i = 0; i < sources.length; i++) {
+                    if (cursors[i] < sources[i].count && sources[i].id(cursors[i]) == id) {
+                        if (!written) {
+                            writer.copy(sources[i], cursors[i]); // The newest file wins
+                            written = true;
+                        }
+                        cursors[i]++;
+                    }
+                }
+                if (next < records && ids[next] == id) {
+                    next++;
+                }
+            }
+            writer.finish(FULL, 0, generation, journalPosition, journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + file, e);
+        }
+
+        for (int sequence = 1; Files.exists(incrementFile(file, sequence)); sequence++) {
+            try {
+                Files.delete(incrementFile(file, sequence));
+            } catch (IOException e) {
+                break; // Ignored on the next start, because its generation does not match
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Writes the accounts changed since the last snapshot as the next file of a chain.
+     *
+     * @param store           The accounts.
+     * @param file            The full snapshot file of the chain.
+     * @param generation      The generation of the chain.
+     * @param sequence        The sequence number of the new file, 1 or more.
+     * @param journalPosition The journal position before the first account is copied.
+     * @param journal         The journal, synced before the snapshot is published. May be null.
+     * @return The number of accounts written.
+     */
+    public static int writeIncrement(AccountStore store, Path file, long generation, int sequence,
+                                     long journalPosition, TransactionJournal journal) {
+        int records = store.size();
+        long[] ids = new long[64];
+        int changed = 0;
+        for (int first = 0; first < records; first += 64) {
+            long word = store.dirtyWord(first);
+            while (word != 0) {
+                int record = first + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (record < records) {
+                    if (changed == ids.length) {
+                        ids = Arrays.copyOf(ids, changed * 2);
+                    }
+                    ids[changed++] = store.id(record);
+                }
+            }
+        }
+        Arrays.parallelSort(ids, 0, changed);
+
+        Path incrementFile = incrementFile(file, sequence);
+        try (Writer writer = new Writer(incrementFile)) {
+            for (int i = 0; i < changed; i++) {
+                writer.copy(store, store.probe(ids[i]));
+            }
+            writer.finish(INCREMENT, sequence, generation, journalPosition, journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot " + incrementFile, e);
+        }
+        return changed;
+    }
+
+    /**
+     * Writes records through a direct buffer into a temporary file, which replaces the target
+     * file only once it is complete and on disk.
+     */
+    private static final class Writer implements AutoCloseable {
+        private final Path file;
+        private final Path temporaryFile;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private long count;
+        private boolean finished;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Copies a record of the store. The dirty bit is cleared before the copy, under the
+         * record's lock, so a change made after the copy goes into the next incremental snapshot.
+         */
+        void copy(AccountStore store, int record) throws IOException {
+            ByteBuffer out = next();
+            store.lock(record);
+            try {
+                store.clearDirty(record);
+                out.putLong(store.id(record));
+                out.putLong(store.balance(record) + store.pendingCredits(record));
+                out.putLong(store.dailyLimit(record));
+                out.putLong(store.dailyWithdrawn(record));
+                out.putLong(store.windowEnd(record));
+                out.putLong(store.pinHash(record));
+                out.putLong(store.lockedUntil(record));
+                out.putLong(store.journalPosition(record));
+                out.putInt(store.failedAttempts(record));
+                out.putInt(0);
+            } finally {
+                store.unlock(record);
+            }
+        }
+
+        void copy(AccountSnapshot snapshot, int entry) throws IOException {
+            ByteBuffer out = next();
+            MappedByteBuffer chunk = snapshot.chunks[entry / RECORDS_PER_CHUNK];
+            int offset = (entry % RECORDS_PER_CHUNK) * RECORD_SIZE;
+            out.put(out.position(), chunk, offset, RECORD_SIZE);
+            out.position(out.position() + RECORD_SIZE);
+        }
+
+        private ByteBuffer next() throws IOException {
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            count++;
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void finish(int kind, int sequence, long generation, long journalPosition, TransactionJournal journal)
+                throws IOException {
+            flush();
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(kind).putInt(sequence);
+            buffer.putLong(generation).putLong(count).putLong(journalPosition);
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+            channel.close();
+            // Every operation in the snapshot must also be in the journal before the snapshot is used
+            if (journal != null) {
+                journal.awaitDurable(journal.position());
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+}
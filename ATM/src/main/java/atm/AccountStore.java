@@ -0,0 +1,724 @@
+package atm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Holds the state of every account in parallel primitive arrays.
+ *
+ * Accounts are numbered records. A record's balance, daily limit, daily total, PIN hash,
+ * failed PIN count and lock flag live at the record's index in paged primitive arrays, so an
+ * account costs about fifty bytes instead of several objects in four hash maps. Pages are never
+ * moved, so growing the store does not copy existing accounts.
+ *
+ * Numeric account IDs are mapped to records by an open-addressing hash table with linear
+ * probing. Lookups do not lock: they read the table optimistically and only retry under the read
+ * lock if an account was added at the same time. Record fields are guarded by a fixed set of
+ * striped locks, see {@link #lock(int)}.
+ *
+ * Daily withdrawal windows and PIN lockouts end on their own. Their deadlines are kept in two
+ * {@link TimingWheel}s keyed by record, and {@link #advanceTimers(long)} clears the accounts whose
+ * deadline has passed. Windows start at an account's first withdrawal rather than at midnight, so
+ * the resets are spread over the day instead of all falling due at once.
+ *
+ * Every change to a record sets its bit in a dirty bitset, so an incremental checkpoint only
+ * writes the accounts changed since the previous one (see {@link AccountSnapshot}). A store can
+ * start from a snapshot without reading it: accounts that are not in the index yet are looked up
+ * in the mapped snapshot files and copied into the store on first use.
+ */
+public class AccountStore {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final long EMPTY = -1;
+    private static final int LOCK_STRIPES = 4096;
+    static final long TIMER_TICK_MILLIS = 1000;
+    private static final VarHandle DIRTY_WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final StampedLock indexLock = new StampedLock();
+    private Index index;
+    private volatile int size;
+
+    private volatile long[][] ids = new long[0][];
+    private volatile long[][] balances = new long[0][];
+    private volatile long[][] dailyLimits = new long[0][];
+    private volatile long[][] dailyWithdrawn = new long[0][];
+    private volatile long[][] pinHashes = new long[0][];
+    private volatile int[][] failedAttempts = new int[0][];
+    private volatile long[][] windowEnds = new long[0][];
+    private volatile long[][] lockedUntil = new long[0][];
+    private volatile long[][] journalPositions = new long[0][];
+    private volatile long[][] pendingCredits = new long[0][];
+    private volatile long[][] dirty = new long[0][];
+    private volatile TransactionLog[][] histories = new TransactionLog[0][];
+
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final AtmMetrics metrics;
+    private final TimingWheel windowResets;
+    private final TimingWheel lockoutExpiries;
+
+    // Snapshot files whose accounts are copied into the store on first use, newest first
+    private volatile AccountSnapshot[] snapshots = new AccountSnapshot[0];
+    private long snapshotAccounts;
+    private long loadedSnapshotAccounts;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param expectedAccounts The number of accounts to size the index for.
+     * @param metrics          Receives the time spent waiting for record locks.
+     */
+    public AccountStore(int expectedAccounts, AtmMetrics metrics) {
+        this.metrics = metrics;
+        int capacity = Integer.highestOneBit(Math.max(16, expectedAccounts) * 2 - 1) << 1;
+        this.index = new Index(capacity);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        long now = System.currentTimeMillis();
+        this.windowResets = new TimingWheel(TIMER_TICK_MILLIS, now);
+        this.lockoutExpiries = new TimingWheel(TIMER_TICK_MILLIS, now);
+    }
+
+    /**
+     * Parses an account ID. Only non-negative decimal numbers are account IDs.
+     *
+     * @param accountId The account ID as typed by the user.
+     * @return The numeric ID, or -1 if the text is not a valid account ID.
+     */
+    public static long parseId(String accountId) {
+        int length = accountId.length();
+        if (length == 0 || length > 18) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < length; i++) {
+            char c = accountId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Hashes a PIN for storage. The account ID is mixed in, so equal PINs on different accounts
+     * have different hashes.
+     *
+     * @param id  The numeric account ID.
+     * @param pin The PIN.
+     * @return The PIN hash.
+     */
+    public static long hashPin(long id, String pin) {
+        long hash = mix(id ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < pin.length(); i++) {
+            hash = mix(hash ^ pin.charAt(i));
+        }
+        return mix(hash ^ pin.length());
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Finds the record of an account with a single probe sequence.
+     *
+     * @param id The numeric account ID.
+     * @return The record index, or -1 if there is no such account.
+     */
+    public int find(long id) {
+        if (id < 0) {
+            return -1;
+        }
+        int record = probe(id);
+        if (record < 0 && snapshots.length > 0) {
+            record = load(id);
+        }
+        return record;
+    }
+
+    /**
+     * Looks an account up in the index only, without loading it from a snapshot.
+     */
+    int probe(long id) {
+        long stamp = indexLock.tryOptimisticRead();
+        int record = index.probe(id);
+        if (!indexLock.validate(stamp)) {
+            stamp = indexLock.readLock();
+            try {
+                record = index.probe(id);
+            } finally {
+                indexLock.unlockRead(stamp);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Uses snapshot files as the source of all accounts that are not in the store yet.
+     *
+     * @param chain The snapshot files, oldest first, as returned by {@link AccountSnapshot#openChain}.
+     */
+    void attachSnapshots(AccountSnapshot[] chain) {
+        long stamp = indexLock.writeLock();
+        try {
+            AccountSnapshot[] newestFirst = new AccountSnapshot[chain.length];
+            for (int i = 0; i < chain.length; i++) {
+                newestFirst[i] = chain[chain.length - 1 - i];
+            }
+            snapshots = newestFirst;
+            snapshotAccounts = AccountSnapshot.countAccounts(chain);
+            loadedSnapshotAccounts = 0;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the attached snapshot files, newest first.
+     */
+    AccountSnapshot[] snapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Copies an account from the newest snapshot file that has it into the store.
+     *
+     * @return The new record index, or -1 if no snapshot has the account.
+     */
+    private int load(long id) {
+        for (AccountSnapshot snapshot : snapshots) {
+            int entry = snapshot.find(id);
+            if (entry < 0) {
+                continue;
+            }
+            int record;
+            long stamp = indexLock.writeLock();
+            try {
+                record = index.probe(id);
+                if (record >= 0) {
+                    return record; // Another thread loaded it first
+                }
+                record = append(id, snapshot.balance(entry), snapshot.dailyLimit(entry), snapshot.pinHash(entry));
+                int page = record >>> PAGE_SHIFT;
+                int offset = record & PAGE_MASK;
+                dailyWithdrawn[page][offset] = snapshot.dailyWithdrawn(entry);
+                windowEnds[page][offset] = snapshot.windowEnd(entry);
+                lockedUntil[page][offset] = snapshot.lockedUntil(entry);
+                failedAttempts[page][offset] = snapshot.failedAttempts(entry);
+                journalPositions[page][offset] = snapshot.journalPosition(entry);
+                if (windowEnds[page][offset] != 0) {
+                    synchronized (windowResets) {
+                        windowResets.schedule(record, windowEnds[page][offset]);
+                    }
+                }
+                if (lockedUntil[page][offset] != 0) {
+                    synchronized (lockoutExpiries) {
+                        lockoutExpiries.schedule(record, lockedUntil[page][offset]);
+                    }
+                }
+                loadedSnapshotAccounts++;
+                size = record + 1; // Not marked dirty: the record matches the snapshot
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+            return record;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an account.
+     *
+     * @param id             The numeric account ID.
+     * @param initialBalance The starting balance in cents.
+     * @param dailyLimit     The daily withdrawal limit in cents.
+     * @param pinHash        The PIN hash from {@link #hashPin(long, String)}.
+     * @return The new record index, or -1 if the account already exists.
+     */
+    public int add(long id, long initialBalance, long dailyLimit, long pinHash) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Account IDs must not be negative");
+        }
+        long stamp = indexLock.writeLock();
+        try {
+            if (index.probe(id) >= 0) {
+                return -1;
+            }
+            for (AccountSnapshot snapshot : snapshots) {
+                if (snapshot.find(id) >= 0) {
+                    return -1; // Exists, but has not been loaded yet
+                }
+            }
+            int record = append(id, initialBalance, dailyLimit, pinHash);
+            markDirty(record);
+            size = record + 1;
+            return record;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Fills the next record and adds it to the index. Callers hold the index write lock and
+     * publish the record by updating the size.
+     */
+    private int append(long id, long balance, long dailyLimit, long pinHash) {
+        int record = size;
+        if ((record & PAGE_MASK) == 0 && (record >>> PAGE_SHIFT) == ids.length) {
+            addPage();
+        }
+        ids[record >>> PAGE_SHIFT][record & PAGE_MASK] = id;
+        balances[record >>> PAGE_SHIFT][record & PAGE_MASK] = balance;
+        dailyLimits[record >>> PAGE_SHIFT][record & PAGE_MASK] = dailyLimit;
+        pinHashes[record >>> PAGE_SHIFT][record & PAGE_MASK] = pinHash;
+
+        if ((record + 1) * 2L > index.keys.length) {
+            index = index.resize();
+        }
+        index.insert(id, record);
+        return record;
+    }
+
+    private void addPage() {
+        int pages = ids.length + 1;
+        long[][] newIds = Arrays.copyOf(ids, pages);
+        long[][] newBalances = Arrays.copyOf(balances, pages);
+        long[][] newLimits = Arrays.copyOf(dailyLimits, pages);
+        long[][] newWithdrawn = Arrays.copyOf(dailyWithdrawn, pages);
+        long[][] newPins = Arrays.copyOf(pinHashes, pages);
+        int[][] newFailed = Arrays.copyOf(failedAttempts, pages);
+        long[][] newWindowEnds = Arrays.copyOf(windowEnds, pages);
+        long[][] newLockedUntil = Arrays.copyOf(lockedUntil, pages);
+        long[][] newJournalPositions = Arrays.copyOf(journalPositions, pages);
+        long[][] newPendingCredits = Arrays.copyOf(pendingCredits, pages);
+        long[][] newDirty = Arrays.copyOf(dirty, pages);
+        TransactionLog[][] newHistories = Arrays.copyOf(histories, pages);
+        newIds[pages - 1] = new long[PAGE_SIZE];
+        newBalances[pages - 1] = new long[PAGE_SIZE];
+        newLimits[pages - 1] = new long[PAGE_SIZE];
+        newWithdrawn[pages - 1] = new long[PAGE_SIZE];
+        newPins[pages - 1] = new long[PAGE_SIZE];
+        newFailed[pages - 1] = new int[PAGE_SIZE];
+        newWindowEnds[pages - 1] = new long[PAGE_SIZE];
+        newLockedUntil[pages - 1] = new long[PAGE_SIZE];
+        newJournalPositions[pages - 1] = new long[PAGE_SIZE];
+        newPendingCredits[pages - 1] = new long[PAGE_SIZE];
+        newDirty[pages - 1] = new long[PAGE_SIZE / Long.SIZE];
+        newHistories[pages - 1] = new TransactionLog[PAGE_SIZE];
+        histories = newHistories;
+        dirty = newDirty;
+        pendingCredits = newPendingCredits;
+        journalPositions = newJournalPositions;
+        lockedUntil = newLockedUntil;
+        windowEnds = newWindowEnds;
+        failedAttempts = newFailed;
+        pinHashes = newPins;
+        dailyWithdrawn = newWithdrawn;
+        dailyLimits = newLimits;
+        balances = newBalances;
+        ids = newIds; // Written last: a reader that sees the new page count sees every new page
+    }
+
+    /**
+     * Returns the number of accounts in the store. Records are numbered from 0 to size() - 1.
+     * Accounts that are still only in a snapshot file are not counted, see {@link #accountCount()}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of accounts, including those not loaded from the snapshot files yet.
+     */
+    public long accountCount() {
+        long stamp = indexLock.readLock();
+        try {
+            return size + snapshotAccounts - loadedSnapshotAccounts;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Acquires the lock that guards the fields of a record. Only a lock that is not free right
+     * away costs a clock read, to record how long the thread waited for it.
+     */
+    void lock(int record) {
+        ReentrantLock lock = stripes[stripeOf(record)];
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            metrics.recordLockWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Releases the lock taken by {@link #lock(int)}.
+     */
+    void unlock(int record) {
+        stripes[stripeOf(record)].unlock();
+    }
+
+    /**
+     * Returns the lock stripe of a record. Locks must be taken in increasing stripe order.
+     */
+    static int stripeOf(int record) {
+        return record & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Returns the number of values the arrays passed to {@link #convertBalances} must hold: the
+     * records in the store plus the records in the snapshot files.
+     */
+    int reportCapacity() {
+        long capacity = size;
+        for (AccountSnapshot snapshot : snapshots) {
+            capacity += snapshot.count();
+        }
+        return Math.toIntExact(capacity);
+    }
+
+    /**
+     * Converts the balance of every account in one pass, for reports. Each page of balances is
+     * read straight from its array, without record locks, so a balance may be from just before
+     * or just after an operation that runs at the same time. Accounts that are still only in a
+     * snapshot file are converted from the newest file that has them, without loading them.
+     *
+     * @param numerator   The numerator of the exchange rate.
+     * @param denominator The denominator of the exchange rate.
+     * @param rounding    How to round to whole cents.
+     * @param ids         Receives the account IDs. Must hold {@link #reportCapacity()} values.
+     * @param converted   Receives the converted balances, in the order of ids. Same length as ids.
+     * @return The number of accounts converted.
+     */
+    int convertBalances(long numerator, long denominator, RoundingMode rounding, long[] ids, long[] converted) {
+        AccountSnapshot[] files = snapshots; // Newest first
+        int fileRecords = 0;
+        for (AccountSnapshot file : files) {
+            fileRecords += file.count();
+        }
+        int records = Math.min(size, converted.length - fileRecords);
+        long[][] idPages = this.ids;
+        long[][] pages = balances;
+        for (int start = 0; start < records; start += PAGE_SIZE) {
+            long[] idPage = idPages[start >>> PAGE_SHIFT];
+            long[] page = pages[start >>> PAGE_SHIFT];
+            int length = Math.min(PAGE_SIZE, records - start);
+            for (int i = 0; i < length; i++) {
+                ids[start + i] = idPage[i];
+                converted[start + i] = Money.convert(page[i], numerator, denominator, rounding);
+            }
+        }
+
+        int count = records;
+        for (int i = 0; i < files.length; i++) {
+            for (int entry = 0; entry < files[i].count(); entry++) {
+                long id = files[i].id(entry);
+                int record = probe(id);
+                if ((record >= 0 && record < records) || inNewerFile(files, i, id)) {
+                    continue; // Converted above, or from the newer file
+                }
+                ids[count] = id;
+                converted[count++] = Money.convert(files[i].balance(entry), numerator, denominator, rounding);
+            }
+        }
+        return count;
+    }
+
+    private static boolean inNewerFile(AccountSnapshot[] newestFirst, int file, long id) {
+        for (int i = 0; i < file; i++) {
+            if (newestFirst[i].find(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Field accessors. Callers hold the record's stripe lock for anything but the immutable ID.
+
+    long id(int record) {
+        return ids[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    long balance(int record) {
+        return balances[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void setBalance(int record, long value) {
+        balances[record >>> PAGE_SHIFT][record & PAGE_MASK] = value;
+        markDirty(record);
+    }
+
+    long dailyLimit(int record) {
+        return dailyLimits[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void setDailyLimit(int record, long value) {
+        dailyLimits[record >>> PAGE_SHIFT][record & PAGE_MASK] = value;
+        markDirty(record);
+    }
+
+    long dailyWithdrawn(int record) {
+        return dailyWithdrawn[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void setDailyWithdrawn(int record, long value) {
+        dailyWithdrawn[record >>> PAGE_SHIFT][record & PAGE_MASK] = value;
+        markDirty(record);
+    }
+
+    long pinHash(int record) {
+        return pinHashes[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void setPinHash(int record, long value) {
+        pinHashes[record >>> PAGE_SHIFT][record & PAGE_MASK] = value;
+        markDirty(record);
+    }
+
+    int failedAttempts(int record) {
+        return failedAttempts[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void setFailedAttempts(int record, int value) {
+        failedAttempts[record >>> PAGE_SHIFT][record & PAGE_MASK] = value;
+        markDirty(record);
+    }
+
+    /**
+     * Returns the end of the record's daily withdrawal window, or 0 if no window is open.
+     */
+    long windowEnd(int record) {
+        return windowEnds[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    /**
+     * Opens a daily withdrawal window on a record and schedules its reset.
+     *
+     * @param record    The record index.
+     * @param windowEnd The time at which the window's withdrawals stop counting.
+     */
+    void openWindow(int record, long windowEnd) {
+        windowEnds[record >>> PAGE_SHIFT][record & PAGE_MASK] = windowEnd;
+        markDirty(record);
+        synchronized (windowResets) {
+            windowResets.schedule(record, windowEnd);
+        }
+    }
+
+    /**
+     * Closes the record's daily withdrawal window, so its withdrawals no longer count.
+     */
+    void closeWindow(int record) {
+        windowEnds[record >>> PAGE_SHIFT][record & PAGE_MASK] = 0;
+        dailyWithdrawn[record >>> PAGE_SHIFT][record & PAGE_MASK] = 0;
+        markDirty(record);
+    }
+
+    boolean isLocked(int record) {
+        return lockedUntil[record >>> PAGE_SHIFT][record & PAGE_MASK] != 0;
+    }
+
+    /**
+     * Returns the time at which the record's lockout ends, or 0 if it is not locked.
+     */
+    long lockedUntil(int record) {
+        return lockedUntil[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    /**
+     * Returns the journal position of the last operation applied to the record, or 0 if none.
+     */
+    long journalPosition(int record) {
+        return journalPositions[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void setJournalPosition(int record, long position) {
+        journalPositions[record >>> PAGE_SHIFT][record & PAGE_MASK] = position;
+        markDirty(record);
+    }
+
+    /**
+     * Returns the transfers journaled towards the record whose money has not been credited yet.
+     * A checkpoint counts them as part of the balance, because the journal records them as done.
+     */
+    long pendingCredits(int record) {
+        return pendingCredits[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    void addPendingCredits(int record, long amount) {
+        pendingCredits[record >>> PAGE_SHIFT][record & PAGE_MASK] += amount;
+        markDirty(record);
+    }
+
+    /**
+     * Marks a record as changed since the last checkpoint. Records of different stripes share
+     * bitset words, so the bit is set atomically.
+     */
+    void markDirty(int record) {
+        long[] words = dirty[record >>> PAGE_SHIFT];
+        int word = (record & PAGE_MASK) >>> 6;
+        long bit = 1L << record;
+        if (((long) DIRTY_WORDS.getVolatile(words, word) & bit) == 0) {
+            DIRTY_WORDS.getAndBitwiseOr(words, word, bit);
+        }
+    }
+
+    /**
+     * Clears a record's dirty bit. A checkpoint does this under the record's lock before copying
+     * it, so a change made after the copy marks the record again.
+     */
+    void clearDirty(int record) {
+        DIRTY_WORDS.getAndBitwiseAnd(dirty[record >>> PAGE_SHIFT], (record & PAGE_MASK) >>> 6, ~(1L << record));
+    }
+
+    /**
+     * Returns the dirty bits of 64 records, starting at a multiple of 64.
+     */
+    long dirtyWord(int firstRecord) {
+        return (long) DIRTY_WORDS.getVolatile(dirty[firstRecord >>> PAGE_SHIFT], (firstRecord & PAGE_MASK) >>> 6);
+    }
+
+    /**
+     * Locks a record until the given time and schedules the unlock.
+     *
+     * @param record The record index.
+     * @param until  The time at which the lock expires.
+     */
+    void lockUntil(int record, long until) {
+        lockedUntil[record >>> PAGE_SHIFT][record & PAGE_MASK] = until;
+        markDirty(record);
+        synchronized (lockoutExpiries) {
+            lockoutExpiries.schedule(record, until);
+        }
+    }
+
+    /**
+     * Clears the daily windows and lockouts whose time has come.
+     *
+     * The due records are taken from the wheels first and then updated one at a time under their
+     * own stripe lock, so this never holds a wheel and a stripe lock together in the wrong order.
+     * Each record's deadline is checked again under its lock, in case it was moved meanwhile.
+     *
+     * @param now The current time in milliseconds.
+     * @return The number of windows and lockouts cleared.
+     */
+    public int advanceTimers(long now) {
+        int[] windows;
+        synchronized (windowResets) {
+            windows = windowResets.advance(now);
+        }
+        int[] lockouts;
+        synchronized (lockoutExpiries) {
+            lockouts = lockoutExpiries.advance(now);
+        }
+        int cleared = 0;
+        for (int record : windows) {
+            lock(record);
+            try {
+                long windowEnd = windowEnd(record);
+                if (windowEnd != 0 && windowEnd <= now) {
+                    closeWindow(record);
+                    cleared++;
+                }
+            } finally {
+                unlock(record);
+            }
+        }
+        for (int record : lockouts) {
+            lock(record);
+            try {
+                long until = lockedUntil[record >>> PAGE_SHIFT][record & PAGE_MASK];
+                if (until != 0 && until <= now) {
+                    lockedUntil[record >>> PAGE_SHIFT][record & PAGE_MASK] = 0;
+                    setFailedAttempts(record, 0); // Also marks the record dirty
+                    cleared++;
+                }
+            } finally {
+                unlock(record);
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Returns the transaction history of a record, creating it on first use.
+     */
+    TransactionLog history(int record) {
+        TransactionLog[] page = histories[record >>> PAGE_SHIFT];
+        TransactionLog history = page[record & PAGE_MASK];
+        if (history == null) {
+            history = new TransactionLog();
+            page[record & PAGE_MASK] = history;
+        }
+        return history;
+    }
+
+    /**
+     * Returns the transaction history of a record, or null if it has no transactions yet.
+     */
+    TransactionLog historyIfPresent(int record) {
+        return histories[record >>> PAGE_SHIFT][record & PAGE_MASK];
+    }
+
+    /**
+     * The open-addressing table from account ID to record index. It is replaced as a whole when
+     * it grows, so an optimistic reader always sees a matching pair of arrays.
+     */
+    private static final class Index {
+        final long[] keys;
+        final int[] records;
+
+        Index(int capacity) {
+            keys = new long[capacity];
+            records = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int probe(long id) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(id) & mask;
+            // An optimistic reader may race with an insert; the bounded loop keeps that harmless
+            for (int i = 0; i <= mask; i++) {
+                long key = keys[slot];
+                if (key == id) {
+                    return records[slot];
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void insert(long id, int record) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(id) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            records[slot] = record;
+            keys[slot] = id;
+        }
+
+        Index resize() {
+            Index larger = new Index(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    larger.insert(keys[i], records[i]);
+                }
+            }
+            return larger;
+        }
+    }
+}
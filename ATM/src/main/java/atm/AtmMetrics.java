@@ -0,0 +1,210 @@
+package atm;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms, rejection counters and lock wait times of an ATM.
+ *
+ * Every instrumented operation records its latency into the histogram of its {@link Operation},
+ * and every rejected operation counts its {@link TransactionResult}. Time spent waiting for an
+ * account lock is recorded separately, and only when the lock was not free, so uncontended locks
+ * cost nothing extra. Recording never allocates.
+ */
+public class AtmMetrics implements AtmMetricsMXBean {
+    /**
+     * The instrumented operations.
+     */
+    public enum Operation {
+        VERIFY_PIN,
+        SELECT_ACCOUNT,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        HISTORY
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] rejections = new LongAdder[TransactionResult.values().length];
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+
+    public AtmMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the latency of an operation.
+     *
+     * @param operation  The operation.
+     * @param startNanos The start time taken with {@link System#nanoTime()}.
+     */
+    public void record(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].recordSince(startNanos);
+    }
+
+    /**
+     * Records the latency of an operation and counts its result if it was rejected.
+     *
+     * @param operation  The operation.
+     * @param startNanos The start time taken with {@link System#nanoTime()}.
+     * @param result     The result of the operation.
+     * @return The result, so that callers can return the call directly.
+     */
+    public TransactionResult record(Operation operation, long startNanos, TransactionResult result) {
+        latencies[operation.ordinal()].recordSince(startNanos);
+        if (result != TransactionResult.SUCCESS) {
+            rejections[result.ordinal()].increment();
+        }
+        return result;
+    }
+
+    /**
+     * Records the time a thread waited for an account lock.
+     *
+     * @param nanos The wait time in nanoseconds.
+     */
+    public void recordLockWait(long nanos) {
+        lockWaits.record(nanos);
+    }
+
+    /**
+     * Returns the latency histogram of an operation.
+     */
+    public LatencyHistogram.Snapshot latency(Operation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    /**
+     * Returns how often operations were rejected for a reason.
+     */
+    public long rejections(TransactionResult reason) {
+        return rejections[reason.ordinal()].sum();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param name The name that tells this ATM apart, used as the "name" key of the object name.
+     * @throws JMException If the name is taken or invalid.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("atm:type=Metrics,name=" + ObjectName.quote(name)));
+    }
+
+    /**
+     * Writes all metrics as a text table, latencies in microseconds.
+     *
+     * @param out The stream to write to.
+     */
+    public void dump(PrintStream out) {
+        out.print(dump());
+        out.flush();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-15s %10s %9s %9s %9s %9s %9s%n", "operation", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (Operation operation : Operation.values()) {
+            appendLine(text, operation.name(), latency(operation));
+        }
+        appendLine(text, "LOCK_WAIT", lockWaits.snapshot());
+        text.append("rejections:");
+        for (TransactionResult reason : TransactionResult.values()) {
+            long count = rejections(reason);
+            if (count > 0) {
+                text.append(' ').append(reason.name()).append('=').append(count);
+            }
+        }
+        return text.append(System.lineSeparator()).toString();
+    }
+
+    private static void appendLine(StringBuilder text, String name, LatencyHistogram.Snapshot latency) {
+        text.append(String.format("%-15s %10d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, latency.getCount(),
+                latency.percentile(0.50) / 1000.0, latency.percentile(0.90) / 1000.0, latency.percentile(0.99) / 1000.0,
+                latency.percentile(0.999) / 1000.0, latency.getMaxNanos() / 1000.0));
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        for (LongAdder counter : rejections) {
+            counter.reset();
+        }
+        lockWaits.reset();
+    }
+
+    private Map<String, Long> byOperation(ToLongFunction<LatencyHistogram.Snapshot> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            values.put(operation.name(), value.applyAsLong(latency(operation)));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        return byOperation(LatencyHistogram.Snapshot::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Nanos() {
+        return byOperation(latency -> latency.percentile(0.50));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Nanos() {
+        return byOperation(latency -> latency.percentile(0.99));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP999Nanos() {
+        return byOperation(latency -> latency.percentile(0.999));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxNanos() {
+        return byOperation(LatencyHistogram.Snapshot::getMaxNanos);
+    }
+
+    @Override
+    public Map<String, Long> getRejections() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (TransactionResult reason : TransactionResult.values()) {
+            if (reason != TransactionResult.SUCCESS) {
+                values.put(reason.name(), rejections(reason));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public long getLockWaitCount() {
+        return lockWaits.snapshot().getCount();
+    }
+
+    @Override
+    public long getLockWaitTotalNanos() {
+        return lockWaits.snapshot().getTotalNanos();
+    }
+
+    @Override
+    public long getLockWaitP99Nanos() {
+        return lockWaits.snapshot().percentile(0.99);
+    }
+}
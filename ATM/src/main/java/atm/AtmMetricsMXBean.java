@@ -0,0 +1,30 @@
+package atm;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link AtmMetrics}. Latencies are in nanoseconds and keyed by operation name.
+ */
+public interface AtmMetricsMXBean {
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    Map<String, Long> getLatencyP999Nanos();
+
+    Map<String, Long> getLatencyMaxNanos();
+
+    Map<String, Long> getRejections();
+
+    long getLockWaitCount();
+
+    long getLockWaitTotalNanos();
+
+    long getLockWaitP99Nanos();
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,370 @@
+package atm;
+
+import java.math.RoundingMode;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a user's bank account.
+ * The account's state lives in an {@link AccountStore} record; this object is a small handle to it.
+ * All state changes happen under the record's stripe lock, so one account can be used from many
+ * threads at once. Amounts are exact {@code long} values in cents (see {@link Money}).
+ */
+class BankAccount {
+    static final long DEFAULT_DAILY_LIMIT = Money.of(1000, 0);
+    static final long DAILY_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(1);
+    /** The currency of all account balances. */
+    static final String CURRENCY = "USD";
+
+    private final AccountStore store;
+    private final int record;
+
+    /**
+     * Constructor to create a handle to an account record.
+     * 
+     * @param store  The store that holds the account.
+     * @param record The record index of the account in the store.
+     */
+    BankAccount(AccountStore store, int record) {
+        this.store = store;
+        this.record = record;
+    }
+
+    /**
+     * Returns the account ID.
+     * 
+     * @return The account ID.
+     */
+    public String getAccountId() {
+        return String.valueOf(store.id(record));
+    }
+
+    /**
+     * Deposits a specified amount into the account.
+     * 
+     * @param amount The amount to deposit in cents.
+     * @return SUCCESS, or INVALID_AMOUNT.
+     */
+    public TransactionResult deposit(long amount) {
+        return tryDeposit(amount, TransactionLog.DEPOSIT);
+    }
+
+    /**
+     * Deposits a specified amount into the account and records it with the given type, without any output.
+     * 
+     * @param amount The amount to deposit in cents.
+     * @param type   The history type code, {@link TransactionLog#DEPOSIT} or {@link TransactionLog#TRANSFER_IN}.
+     * @return The result of the deposit.
+     */
+    TransactionResult tryDeposit(long amount, byte type) {
+        if (amount <= 0) {
+            return TransactionResult.INVALID_AMOUNT;
+        }
+        lock();
+        try {
+            store.setBalance(record, Math.addExact(store.balance(record), amount));
+            store.history(record).add(System.currentTimeMillis(), type, amount);
+        } finally {
+            unlock();
+        }
+        return TransactionResult.SUCCESS;
+    }
+
+    /**
+     * Withdraws a specified amount from the account if sufficient balance is available and daily limit is not exceeded.
+     * The balance check and the update happen atomically.
+     * 
+     * @param amount The amount to withdraw in cents.
+     * @return SUCCESS, INSUFFICIENT_FUNDS, DAILY_LIMIT_EXCEEDED or INVALID_AMOUNT.
+     */
+    public TransactionResult withdraw(long amount) {
+        return tryWithdraw(amount, TransactionLog.WITHDRAWAL);
+    }
+
+    /**
+     * Withdraws a specified amount from the account and records it with the given type, without any output.
+     * 
+     * @param amount The amount to withdraw in cents.
+     * @param type   The history type code, {@link TransactionLog#WITHDRAWAL} or {@link TransactionLog#TRANSFER_OUT}.
+     * @return The result of the withdrawal.
+     */
+    TransactionResult tryWithdraw(long amount, byte type) {
+        if (amount <= 0) {
+            return TransactionResult.INVALID_AMOUNT;
+        }
+        long now = System.currentTimeMillis();
+        lock();
+        try {
+            long balance = store.balance(record);
+            long dailyWithdrawn = currentDailyWithdrawn(now);
+            if (amount > balance) {
+                return TransactionResult.INSUFFICIENT_FUNDS;
+            }
+            if (dailyWithdrawn + amount > store.dailyLimit(record)) {
+                return TransactionResult.DAILY_LIMIT_EXCEEDED;
+            }
+            store.setBalance(record, balance - amount);
+            addDailyWithdrawn(now, dailyWithdrawn, amount);
+            store.history(record).add(now, type, amount);
+            return TransactionResult.SUCCESS;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Returns the current balance of the account.
+     * 
+     * @return The account balance in cents.
+     */
+    public long getBalance() {
+        lock();
+        try {
+            return store.balance(record);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the transaction history of the account.
+     * 
+     * @return The transactions, oldest first.
+     */
+    public TransactionLog getTransactionHistory() {
+        lock();
+        try {
+            TransactionLog history = store.historyIfPresent(record);
+            return history == null ? new TransactionLog(1) : history.copy();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Formats one page of the transaction history, newest entries first, without copying the history.
+     * 
+     * @param page     The page, starting at 0 for the most recent transactions.
+     * @param pageSize The number of entries per page.
+     * @param lines    Receives the formatted entries.
+     * @return True if there are older transactions on a following page.
+     * @throws IllegalArgumentException If the page is negative.
+     */
+    public boolean formatHistoryPage(int page, int pageSize, List<String> lines) {
+        if (page < 0) {
+            throw new IllegalArgumentException("The page must not be negative: " + page);
+        }
+        lock();
+        try {
+            TransactionLog history = store.historyIfPresent(record);
+            if (history == null) {
+                return false;
+            }
+            long newest = history.size() - 1 - (long) page * pageSize;
+            long oldest = Math.max(0, newest - pageSize + 1);
+            for (long i = newest; i >= oldest; i--) {
+                lines.add(history.format((int) i));
+            }
+            return oldest > 0;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Formats the transactions that match a filter, newest first. Only the entries in the
+     * filter's time range are looked at.
+     * 
+     * @param filter The time range, types and amount range to match.
+     * @param before Where to continue: -1 for the newest transactions, otherwise the value
+     *               returned for the previous page. Transactions recorded in between do not
+     *               shift the pages.
+     * @param limit  The page size, at least 1.
+     * @param lines  Receives the formatted entries.
+     * @return The value to pass as before for the next page, or -1 if there are no more matches.
+     * @throws IllegalArgumentException If the limit is less than 1.
+     */
+    public long formatHistory(TransactionLog.Filter filter, long before, int limit, List<String> lines) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1: " + limit);
+        }
+        lock();
+        try {
+            TransactionLog history = store.historyIfPresent(record);
+            if (history == null) {
+                return -1;
+            }
+            int[] matches = new int[limit];
+            int found = history.query(filter, before < 0 ? Long.MAX_VALUE : before, matches);
+            for (int i = 0; i < found; i++) {
+                lines.add(history.format(matches[i]));
+            }
+            return found == limit ? history.sequence(matches[found - 1]) : -1;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Returns the totals of the account's deposits, withdrawals and transfers in one month.
+     * 
+     * @param month The month.
+     * @return The statement.
+     */
+    public TransactionLog.Statement getStatement(YearMonth month) {
+        lock();
+        try {
+            TransactionLog history = store.historyIfPresent(record);
+            return (history == null ? new TransactionLog(1) : history).statement(month);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Changes the daily withdrawal limit of the account.
+     * 
+     * @param dailyLimit The new limit in cents.
+     */
+    void setDailyLimit(long dailyLimit) {
+        lock();
+        try {
+            store.setDailyLimit(record, dailyLimit);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Converts the current balance to another currency based on the provided exchange rate.
+     * 
+     * @param exchangeRate The exchange rate for conversion in micro-units (see {@link Money#parseRate(String)}).
+     * @param rounding     How to round the result to whole cents.
+     * @return The converted balance in cents.
+     */
+    public long convertToCurrency(long exchangeRate, RoundingMode rounding) {
+        return Money.convert(getBalance(), exchangeRate, rounding);
+    }
+
+    /**
+     * Converts the current balance to another currency with a rate table.
+     * 
+     * @param rates    The rate table.
+     * @param currency The currency code to convert to.
+     * @param rounding How to round the result to whole cents.
+     * @return The converted balance in cents.
+     * @throws IllegalArgumentException If the table does not have the currency or the account currency.
+     */
+    public long convertToCurrency(ExchangeRates.Table rates, String currency, RoundingMode rounding) {
+        return rates.convert(getBalance(), CURRENCY, currency, rounding);
+    }
+
+    /**
+     * Applies a deposit that was already accepted, without checks or output. Used for journal replay.
+     * 
+     * @param timestamp The time of the deposit.
+     * @param amount    The deposited amount in cents.
+     * @param type      The history type code.
+     */
+    void applyDeposit(long timestamp, long amount, byte type) {
+        lock();
+        try {
+            store.setBalance(record, Math.addExact(store.balance(record), amount));
+            store.history(record).add(timestamp, type, amount);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Applies a withdrawal that was already accepted, without checks or output. Used for journal replay.
+     * 
+     * @param timestamp The time of the withdrawal.
+     * @param amount    The withdrawn amount in cents.
+     * @param type      The history type code.
+     */
+    void applyWithdrawal(long timestamp, long amount, byte type) {
+        lock();
+        try {
+            store.setBalance(record, store.balance(record) - amount);
+            addDailyWithdrawn(timestamp, currentDailyWithdrawn(timestamp), amount);
+            store.history(record).add(timestamp, type, amount);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Returns the amount withdrawn in the current daily window. A window that has ended but was
+     * not reset yet, for example while replaying old withdrawals, is reset here. Callers hold the lock.
+     */
+    private long currentDailyWithdrawn(long now) {
+        long windowEnd = store.windowEnd(record);
+        if (windowEnd != 0 && windowEnd <= now) {
+            store.closeWindow(record);
+        }
+        return store.dailyWithdrawn(record);
+    }
+
+    /**
+     * Counts a withdrawal against the daily limit, opening a new window if none is open. Callers hold the lock.
+     */
+    private void addDailyWithdrawn(long now, long dailyWithdrawn, long amount) {
+        if (store.windowEnd(record) == 0) {
+            store.openWindow(record, now + DAILY_WINDOW_MILLIS);
+        }
+        store.setDailyWithdrawn(record, dailyWithdrawn + amount);
+    }
+
+    /**
+     * Returns the record index of the account in its store.
+     */
+    int record() {
+        return record;
+    }
+
+    /**
+     * Acquires the account lock, so that several calls on this account appear as one step.
+     */
+    void lock() {
+        store.lock(record);
+    }
+
+    /**
+     * Releases the account lock taken by {@link #lock()}.
+     */
+    void unlock() {
+        store.unlock(record);
+    }
+
+    /**
+     * Locks two accounts of the same store in increasing stripe order, so that concurrent
+     * transfers in opposite directions can never deadlock.
+     * 
+     * @param first  One of the accounts.
+     * @param second The other account.
+     */
+    static void lockBoth(BankAccount first, BankAccount second) {
+        int firstStripe = AccountStore.stripeOf(first.record);
+        int secondStripe = AccountStore.stripeOf(second.record);
+        if (firstStripe <= secondStripe) {
+            first.lock();
+            second.lock();
+        } else {
+            second.lock();
+            first.lock();
+        }
+    }
+
+    /**
+     * Releases the locks taken by {@link #lockBoth(BankAccount, BankAccount)}.
+     * 
+     * @param first  One of the accounts.
+     * @param second The other account.
+     */
+    static void unlockBoth(BankAccount first, BankAccount second) {
+        first.unlock();
+        second.unlock();
+    }
+}
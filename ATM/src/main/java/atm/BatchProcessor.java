@@ -0,0 +1,560 @@
+package atm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a file of ATM operations in parallel.
+ *
+ * The file has one operation per line:
+ * <pre>
+ * OPEN,&lt;account&gt;,&lt;initial balance&gt;,&lt;pin&gt;
+ * DEPOSIT,&lt;account&gt;,&lt;amount&gt;
+ * WITHDRAW,&lt;account&gt;,&lt;amount&gt;
+ * TRANSFER,&lt;source account&gt;,&lt;target account&gt;,&lt;amount&gt;
+ * </pre>
+ * Blank lines and lines starting with '#' are ignored.
+ *
+ * The file is streamed and each operation is sent to the worker that owns its account (by hash
+ * of the account ID), so operations on one account run in file order on one thread. A transfer
+ * between accounts owned by different workers is sent to both of them and meets at its line: the
+ * target worker reaches it and reports whether the target account exists at that point of the
+ * file, the source worker then debits the source account and journals the transfer, and the
+ * target worker applies the credit before it moves on. So every account sees its operations,
+ * credits included, in file order, and an account opened further down the file is not there yet
+ * for an earlier transfer. A worker waits only for a line before the one that another worker
+ * waits for, so the waits never form a cycle; while a worker waits, the reader sends the other
+ * workers the operations it is still collecting for them.
+ *
+ * Journal syncs are deferred while the batch runs: each worker makes its operations durable once
+ * per group of operations instead of once per operation.
+ */
+public class BatchProcessor {
+    static final byte OPEN = 0;
+    static final byte DEPOSIT = 1;
+    static final byte WITHDRAW = 2;
+    static final byte TRANSFER = 3;
+    static final byte CREDIT = 4;
+
+    private static final String[] OPERATION_NAMES = {"OPEN", "DEPOSIT", "WITHDRAW", "TRANSFER", "CREDIT"};
+    private static final int BATCH_SIZE = 1024;
+    private static final int BATCHES_IN_FLIGHT_PER_WORKER = 16;
+    private static final int REJECT_BUFFER_SIZE = 64 * 1024;
+
+    private final ATM atm;
+    private final Worker[] workers;
+    private Writer rejectsOut;
+    private volatile RuntimeException failure;
+    private volatile boolean flushRequested;
+
+    /**
+     * Creates a batch processor.
+     *
+     * @param atm         The ATM to run the operations against.
+     * @param workerCount The number of worker threads.
+     */
+    public BatchProcessor(ATM atm, int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }
+        this.atm = atm;
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Runs all operations in a file. A processor can only be used once.
+     *
+     * @param operationsFile The file of operations.
+     * @param rejectsOut     Receives one JSON object per line for every rejected operation, may be null.
+     * @return The counts and throughput of the run.
+     * @throws IOException If the file cannot be read.
+     */
+    public Report process(Path operationsFile, Writer rejectsOut) throws IOException {
+        this.rejectsOut = rejectsOut;
+        Report report = new Report();
+        atm.setDeferJournalSync(true);
+        long start = System.nanoTime();
+
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            threads[i] = new Thread(workers[i], "batch-worker-" + i);
+            threads[i].start();
+        }
+
+        OperationBatch[] pending = new OperationBatch[workers.length];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new OperationBatch();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(operationsFile, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null && failure == null) {
+                lineNumber++;
+                if (flushRequested) {
+                    flushRequested = false;
+                    flushPending(pending, -1);
+                }
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                if (!parseInto(line, lineNumber, pending)) {
+                    report.malformed++;
+                    writeReject(lineNumber, line, "MALFORMED");
+                }
+            }
+        } finally {
+            for (int i = 0; i < workers.length; i++) {
+                if (pending[i].size > 0) {
+                    submit(pending, i);
+                }
+            }
+            for (Worker worker : workers) {
+                worker.inbox.add(OperationBatch.END);
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for batch workers", e);
+                }
+            }
+            atm.setDeferJournalSync(false);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        for (Worker worker : workers) {
+            worker.flushRejects();
+            for (int i = 0; i < report.processed.length; i++) {
+                report.processed[i] += worker.processed[i];
+            }
+            for (int i = 0; i < report.rejected.length; i++) {
+                report.rejected[i] += worker.rejected[i];
+            }
+        }
+        if (rejectsOut != null) {
+            rejectsOut.flush();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Parses one line and appends it to the pending batch of the owning worker, and for a transfer
+     * to another worker's account, to the target worker's batch too.
+     *
+     * @return False if the line is malformed.
+     */
+    private boolean parseInto(String line, long lineNumber, OperationBatch[] pending) {
+        int first = line.indexOf(',');
+        if (first < 0) {
+            return false;
+        }
+        int second = line.indexOf(',', first + 1);
+        int third = second < 0 ? -1 : line.indexOf(',', second + 1);
+
+        byte type;
+        String account;
+        String target = null;
+        long amount;
+        try {
+            String name = line.substring(0, first).trim();
+            switch (name) {
+                case "OPEN":
+                    if (third < 0) {
+                        return false;
+                    }
+                    type = OPEN;
+                    account = line.substring(first + 1, second).trim();
+                    amount = Money.parse(line.substring(second + 1, third).trim());
+                    target = line.substring(third + 1).trim(); // The PIN
+                    break;
+                case "DEPOSIT":
+                case "WITHDRAW":
+                    if (second < 0 || third >= 0) {
+                        return false;
+                    }
+                    type = name.equals("DEPOSIT") ? DEPOSIT : WITHDRAW;
+                    account = line.substring(first + 1, second).trim();
+                    amount = Money.parse(line.substring(second + 1).trim());
+                    break;
+                case "TRANSFER":
+                    if (third < 0) {
+                        return false;
+                    }
+                    type = TRANSFER;
+                    account = line.substring(first + 1, second).trim();
+                    target = line.substring(second + 1, third).trim();
+                    amount = Money.parse(line.substring(third + 1).trim());
+                    break;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            return false;
+        }
+
+        int shard = shardOf(account);
+        CrossShardTransfer crossShard = null;
+        if (type == TRANSFER) {
+            int targetShard = shardOf(target);
+            if (targetShard != shard) {
+                crossShard = new CrossShardTransfer();
+                append(pending, targetShard, CREDIT, target, account, amount, lineNumber, crossShard);
+            }
+        }
+        append(pending, shard, type, account, target, amount, lineNumber, crossShard);
+        return true;
+    }
+
+    private void append(OperationBatch[] pending, int shard, byte type, String account, String target, long amount,
+            long lineNumber, CrossShardTransfer crossShard) {
+        pending[shard].add(type, account, target, amount, lineNumber, crossShard);
+        if (pending[shard].size == BATCH_SIZE) {
+            submit(pending, shard);
+        }
+    }
+
+    /**
+     * Sends a worker its pending batch. Blocks while the worker is too far behind, so the reader
+     * never gets far ahead of the slowest worker; meanwhile the other workers get what is pending
+     * for them, since the worker may be waiting at a transfer for one of them.
+     */
+    private void submit(OperationBatch[] pending, int shard) {
+        Worker worker = workers[shard];
+        try {
+            while (!worker.inputPermits.tryAcquire(1, TimeUnit.MILLISECONDS)) {
+                flushPending(pending, shard);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batch workers", e);
+        }
+        worker.inbox.add(pending[shard]);
+        pending[shard] = new OperationBatch();
+    }
+
+    /**
+     * Sends the partly filled pending batches to the workers that have room for them.
+     *
+     * @param except A worker to leave out, or -1.
+     */
+    private void flushPending(OperationBatch[] pending, int except) {
+        for (int i = 0; i < workers.length; i++) {
+            if (i != except && pending[i].size > 0 && workers[i].inputPermits.tryAcquire()) {
+                workers[i].inbox.add(pending[i]);
+                pending[i] = new OperationBatch();
+            }
+        }
+    }
+
+    private int shardOf(String accountId) {
+        return (accountId.hashCode() & Integer.MAX_VALUE) % workers.length;
+    }
+
+    private void writeReject(long lineNumber, String operation, String account, String target, long amount, TransactionResult reason, StringBuilder out) {
+        if (rejectsOut == null) {
+            return;
+        }
+        out.append("{\"line\":").append(lineNumber)
+                .append(",\"operation\":\"").append(operation)
+                .append("\",\"account\":");
+        appendJsonString(out, account);
+        if (target != null && !operation.equals("OPEN")) {
+            out.append(",\"target\":");
+            appendJsonString(out, target);
+        }
+        out.append(",\"amount\":\"").append(Money.format(amount))
+                .append("\",\"reason\":\"").append(reason.name()).append("\"}\n");
+    }
+
+    private void writeReject(long lineNumber, String line, String reason) throws IOException {
+        if (rejectsOut == null) {
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        out.append("{\"line\":").append(lineNumber).append(",\"input\":");
+        appendJsonString(out, line);
+        out.append(",\"reason\":\"").append(reason).append("\"}\n");
+        synchronized (this) {
+            rejectsOut.write(out.toString());
+        }
+    }
+
+    private static void appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * A fixed-size group of operations, stored column by column.
+     */
+    private static class OperationBatch {
+        static final OperationBatch END = new OperationBatch();
+
+        final byte[] types = new byte[BATCH_SIZE];
+        final String[] accounts = new String[BATCH_SIZE];
+        final String[] targets = new String[BATCH_SIZE];
+        final long[] amounts = new long[BATCH_SIZE];
+        final long[] lineNumbers = new long[BATCH_SIZE];
+        final CrossShardTransfer[] crossShard = new CrossShardTransfer[BATCH_SIZE];
+        int size;
+
+        void add(byte type, String account, String target, long amount, long lineNumber, CrossShardTransfer transfer) {
+            types[size] = type;
+            accounts[size] = account;
+            targets[size] = target;
+            amounts[size] = amount;
+            lineNumbers[size] = lineNumber;
+            crossShard[size] = transfer;
+            size++;
+        }
+    }
+
+    /**
+     * Where the source and target workers of a transfer between their shards meet. The target
+     * worker sends whether the target account exists, the source worker sends the debit's result.
+     */
+    private class CrossShardTransfer {
+        private Boolean targetExists;
+        private TransactionResult debit;
+
+        synchronized void targetChecked(boolean exists) {
+            targetExists = exists;
+            notifyAll();
+        }
+
+        synchronized boolean awaitTarget() throws InterruptedException {
+            while (targetExists == null) {
+                await();
+            }
+            return targetExists;
+        }
+
+        synchronized void debited(TransactionResult result) {
+            debit = result;
+            notifyAll();
+        }
+
+        synchronized TransactionResult awaitDebit() throws InterruptedException {
+            while (debit == null) {
+                await();
+            }
+            return debit;
+        }
+
+        private void await() throws InterruptedException {
+            if (failure != null) {
+                throw new IllegalStateException("Another batch worker failed", failure);
+            }
+            flushRequested = true;
+            wait(1);
+        }
+    }
+
+    /**
+     * Owns one shard of the accounts and runs all of their operations.
+     */
+    private class Worker implements Runnable {
+        private final LinkedBlockingQueue<OperationBatch> inbox = new LinkedBlockingQueue<>();
+        private final Semaphore inputPermits = new Semaphore(BATCHES_IN_FLIGHT_PER_WORKER);
+        private final StringBuilder rejects = new StringBuilder();
+        final long[] processed = new long[OPERATION_NAMES.length - 1];
+        final long[] rejected = new long[TransactionResult.values().length];
+
+        @Override
+        public void run() {
+            try {
+                OperationBatch batch;
+                while ((batch = inbox.take()) != OperationBatch.END) {
+                    run(batch);
+                    atm.syncJournal(); // Group commit for the whole batch
+                    inputPermits.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                inputPermits.release(BATCHES_IN_FLIGHT_PER_WORKER * BATCH_SIZE); // Never block the reader again
+            }
+        }
+
+        private void run(OperationBatch batch) throws InterruptedException {
+            for (int i = 0; i < batch.size; i++) {
+                byte type = batch.types[i];
+                String account = batch.accounts[i];
+                String target = batch.targets[i];
+                long amount = batch.amounts[i];
+                TransactionResult result;
+                switch (type) {
+                    case OPEN:
+                        result = atm.tryOpenAccount(account, amount, target);
+                        break;
+                    case DEPOSIT:
+                        result = atm.tryDeposit(account, amount);
+                        break;
+                    case WITHDRAW:
+                        result = atm.tryWithdraw(account, amount);
+                        break;
+                    case CREDIT:
+                        credit(account, amount, batch.crossShard[i]);
+                        continue;
+                    default:
+                        result = transfer(account, target, amount, batch.crossShard[i]);
+                        break;
+                }
+
+                processed[type]++;
+                if (result != TransactionResult.SUCCESS) {
+                    rejected[result.ordinal()]++;
+                    writeReject(batch.lineNumbers[i], OPERATION_NAMES[type], account, target, amount, result, rejects);
+                    if (rejects.length() >= REJECT_BUFFER_SIZE) {
+                        flushRejects();
+                    }
+                }
+            }
+        }
+
+        private TransactionResult transfer(String source, String target, long amount, CrossShardTransfer crossShard)
+                throws InterruptedException {
+            if (crossShard == null) {
+                return atm.tryTransfer(source, target, amount);
+            }
+            TransactionResult result = TransactionResult.UNKNOWN_ACCOUNT;
+            try {
+                if (crossShard.awaitTarget()) {
+                    result = atm.debitForTransfer(source, target, amount);
+                }
+            } finally {
+                crossShard.debited(result);
+            }
+            return result;
+        }
+
+        /**
+         * The target side of a transfer from another worker's account, at the transfer's line.
+         */
+        private void credit(String target, long amount, CrossShardTransfer crossShard) throws InterruptedException {
+            crossShard.targetChecked(atm.selectAccount(target) != null);
+            if (crossShard.awaitDebit() == TransactionResult.SUCCESS) {
+                atm.creditTransfer(target, amount);
+            }
+        }
+
+        void flushRejects() {
+            if (rejectsOut == null || rejects.length() == 0) {
+                return;
+            }
+            try {
+                synchronized (BatchProcessor.this) {
+                    rejectsOut.append(rejects);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write rejected operations", e);
+            }
+            rejects.setLength(0);
+        }
+    }
+
+    /**
+     * The outcome of a batch run.
+     */
+    public static class Report {
+        final long[] processed = new long[OPERATION_NAMES.length - 1];
+        final long[] rejected = new long[TransactionResult.values().length];
+        long malformed;
+        long elapsedNanos;
+
+        /**
+         * Returns the number of operations that were run, whether accepted or rejected.
+         */
+        public long getOperations() {
+            long total = 0;
+            for (long count : processed) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * Returns the number of operations rejected for the given reason.
+         */
+        public long getRejected(TransactionResult reason) {
+            return rejected[reason.ordinal()];
+        }
+
+        /**
+         * Returns the number of lines that could not be parsed.
+         */
+        public long getMalformed() {
+            return malformed;
+        }
+
+        /**
+         * Returns the processed operations per second.
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getOperations() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Writes the report as a single JSON object.
+         *
+         * @param out Where to write the report.
+         * @throws IOException If writing fails.
+         */
+        public void writeJson(Appendable out) throws IOException {
+            long rejectedTotal = 0;
+            for (long count : rejected) {
+                rejectedTotal += count;
+            }
+
+            out.append("{\"operations\":").append(String.valueOf(getOperations()));
+            out.append(",\"accepted\":").append(String.valueOf(getOperations() - rejectedTotal));
+            out.append(",\"malformed\":").append(String.valueOf(malformed));
+            out.append(",\"elapsedMillis\":").append(String.valueOf(elapsedNanos / 1_000_000));
+            out.append(",\"operationsPerSecond\":").append(String.valueOf(Math.round(getThroughput())));
+            out.append(",\"byOperation\":{");
+            for (int i = 0; i < processed.length; i++) {
+                out.append(i == 0 ? "" : ",").append('"').append(OPERATION_NAMES[i]).append("\":")
+                        .append(String.valueOf(processed[i]));
+            }
+            out.append("},\"rejected\":{");
+            boolean first = true;
+            for (TransactionResult reason : TransactionResult.values()) {
+                if (reason != TransactionResult.SUCCESS) {
+                    out.append(first ? "" : ",").append('"').append(reason.name()).append("\":")
+                            .append(String.valueOf(rejected[reason.ordinal()]));
+                    first = false;
+                }
+            }
+            out.append("}}\n");
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package atm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous sink for account events, so that slow output never holds up an operation.
+ *
+ * Any number of threads publish events into a bounded ring buffer of preallocated slots; one
+ * writer thread takes them out, formats a whole batch and writes it with a single write and flush.
+ * Each slot has a sequence number that tells producers and the writer whose turn it is (the
+ * bounded queue of Dmitry Vyukov), so publishing is one compare-and-set and a few field writes,
+ * without locks or allocation. When the buffer is full the event is dropped and counted instead
+ * of making the operation wait.
+ */
+public class EventSink implements AutoCloseable {
+    /**
+     * The kinds of events.
+     */
+    public enum Type {
+        OPEN_ACCOUNT,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        VERIFY_PIN,
+        CHANGE_PIN
+    }
+
+    /**
+     * Turns an event into text.
+     */
+    public interface Formatter {
+        /**
+         * Appends the text of an event, including the line break.
+         *
+         * @param event The event. It is only valid during the call.
+         * @param out   Receives the text.
+         */
+        void format(Event event, StringBuilder out);
+    }
+
+    /**
+     * Formats events as one line of space-separated fields, for log files.
+     */
+    public static final Formatter LOG_LINES = (event, out) -> {
+        out.append(event.getTimestamp()).append(' ').append(event.getType()).append(' ').append(event.getResult())
+                .append(' ').append(event.getAccountId());
+        if (event.getTargetAccountId() != null) {
+            out.append(' ').append(event.getTargetAccountId());
+        }
+        out.append(' ').append(Money.format(event.getAmount())).append('\n');
+    };
+
+    /**
+     * One slot of the ring buffer. Producers fill it in; the writer thread reads it.
+     */
+    public static final class Event {
+        private long timestamp;
+        private Type type;
+        private TransactionResult result;
+        private String accountId;
+        private String targetAccountId;
+        private long amount;
+        private long balance;
+        private int attemptsLeft;
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public TransactionResult getResult() {
+            return result;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        /**
+         * Returns the target account of a transfer, null for other events.
+         */
+        public String getTargetAccountId() {
+            return targetAccountId;
+        }
+
+        /**
+         * Returns the amount of the operation in cents.
+         */
+        public long getAmount() {
+            return amount;
+        }
+
+        /**
+         * Returns the balance after the operation in cents.
+         */
+        public long getBalance() {
+            return balance;
+        }
+
+        /**
+         * Returns how many more wrong PINs the account accepts, for PIN checks.
+         */
+        public int getAttemptsLeft() {
+            return attemptsLeft;
+        }
+    }
+
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+
+    private final Writer out;
+    private final Formatter formatter;
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final StringBuilder batch = new StringBuilder();
+    private final Thread writer;
+    private volatile long written;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+    private volatile boolean started;
+    private IOException failure;
+
+    /**
+     * Creates a sink. Its writer thread starts with the first event.
+     *
+     * @param out       The destination, for example the console or a file.
+     * @param capacity  The number of events that can wait for the writer, rounded up to a power of two.
+     * @param formatter Turns events into text.
+     */
+    public EventSink(Writer out, int capacity, Formatter formatter) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.out = out;
+        this.formatter = formatter;
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+        this.writer = new Thread(this::drain, "atm-events");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Publishes an event without waiting for it to be written.
+     *
+     * @param type            The kind of event.
+     * @param result          The result of the operation.
+     * @param accountId       The account.
+     * @param targetAccountId The target account of a transfer, otherwise null.
+     * @param amount          The amount in cents, or 0.
+     * @param balance         The balance after the operation in cents, or 0.
+     * @param attemptsLeft    The remaining PIN attempts, or 0.
+     * @return True if the event was queued, false if the buffer was full and it was dropped.
+     */
+    public boolean publish(Type type, TransactionResult result, String accountId, String targetAccountId,
+            long amount, long balance, int attemptsLeft) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (!started) {
+            start();
+        }
+        long sequence = tail.get();
+        while (true) {
+            int index = (int) sequence & mask;
+            long slotSequence = sequences.get(index);
+            if (slotSequence == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    Event event = slots[index];
+                    event.timestamp = System.currentTimeMillis();
+                    event.type = type;
+                    event.result = result;
+                    event.accountId = accountId;
+                    event.targetAccountId = targetAccountId;
+                    event.amount = amount;
+                    event.balance = balance;
+                    event.attemptsLeft = attemptsLeft;
+                    sequences.set(index, sequence + 1); // Hands the slot to the writer
+                    if (writerParked) {
+                        LockSupport.unpark(writer);
+                    }
+                    return true;
+                }
+                sequence = tail.get();
+            } else if (slotSequence < sequence || closed) {
+                dropped.incrementAndGet(); // The writer has not caught up
+                return false;
+            } else {
+                sequence = tail.get(); // Another producer took this slot
+            }
+        }
+    }
+
+    private synchronized void start() {
+        if (!started) {
+            writer.start();
+            started = true;
+        }
+    }
+
+    /**
+     * Waits until every event published so far has been written.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (started && written < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Returns how many events were dropped because the writer could not keep up.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Runs on the writer thread: takes batches of events out of the ring buffer until the sink is closed.
+     */
+    private void drain() {
+        long head = 0;
+        while (true) {
+            long batchEnd = head;
+            int index = (int) batchEnd & mask;
+            while (sequences.get(index) == batchEnd + 1 && batch.length() < MAX_BATCH_CHARS) {
+                formatter.format(slots[index], batch);
+                sequences.set(index, batchEnd + slots.length); // Frees the slot for producers
+                batchEnd++;
+                index = (int) batchEnd & mask;
+            }
+            if (batchEnd > head) {
+                write();
+                head = batchEnd;
+                written = head;
+                continue;
+            }
+            if (closed && tail.get() == head) {
+                return;
+            }
+            writerParked = true;
+            if (sequences.get(index) != head + 1 && !closed) {
+                LockSupport.parkNanos(this, 10_000_000);
+            }
+            writerParked = false;
+        }
+    }
+
+    private void write() {
+        if (failure == null) {
+            try {
+                out.append(batch);
+                out.flush();
+            } catch (IOException e) {
+                failure = e; // Events after this are discarded, operations are not affected
+                System.err.println("Event output failed: " + e.getMessage());
+            }
+        }
+        batch.setLength(0);
+    }
+
+    /**
+     * Writes the remaining events and stops the writer thread. The destination is not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (started) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
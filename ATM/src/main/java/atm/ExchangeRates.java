@@ -0,0 +1,197 @@
+package atm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A table of exchange rates loaded from a file, which can be reloaded while it is in use.
+ *
+ * The file has one rate per line, as units of the currency per unit of the base currency, and a
+ * BASE line naming the base currency:
+ * <pre>
+ * # Rates per US dollar
+ * BASE USD
+ * EUR 0.92
+ * JPY 151.20
+ * </pre>
+ * Every load builds a new immutable {@link Table} and publishes it with one volatile write
+ * (copy-on-write), so readers never take a lock, and a conversion that has started keeps using the
+ * table it started with while a refresh replaces it. Any two currencies in the table can be
+ * converted into each other through the base currency, with a single rounding at the end.
+ */
+public class ExchangeRates {
+    private final Path file;
+    private volatile Table table;
+    private long lastModified;
+
+    private ExchangeRates(Path file, Table table, long lastModified) {
+        this.file = file;
+        this.table = table;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Loads a rate table.
+     *
+     * @param file The rates file.
+     * @return The rates.
+     * @throws IOException If the file cannot be read or has an invalid line.
+     */
+    public static ExchangeRates load(Path file) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        return new ExchangeRates(file, Table.read(file), modified);
+    }
+
+    /**
+     * Returns the current table. It does not change; a refresh publishes a new one.
+     *
+     * @return The table.
+     */
+    public Table current() {
+        return table;
+    }
+
+    /**
+     * Reloads the file if it was modified since it was last read. Conversions keep running
+     * during the reload; if the file is invalid, the current table stays in place.
+     *
+     * @return True if a new table was published.
+     * @throws IOException If the file cannot be read or has an invalid line.
+     */
+    public synchronized boolean refresh() throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        if (modified == lastModified) {
+            return false;
+        }
+        table = Table.read(file);
+        lastModified = modified;
+        return true;
+    }
+
+    /**
+     * Converts an amount with the current table.
+     *
+     * @param cents    The amount in cents of the from currency.
+     * @param from     The currency code of the amount.
+     * @param to       The currency code to convert to.
+     * @param rounding How to round to whole cents.
+     * @return The converted amount in cents of the to currency.
+     * @throws IllegalArgumentException If a currency is not in the table.
+     */
+    public long convert(long cents, String from, String to, RoundingMode rounding) {
+        return table.convert(cents, from, to, rounding);
+    }
+
+    /**
+     * One version of the rate table.
+     */
+    public static final class Table {
+        private final String base;
+        private final Map<String, Long> rates; // Micro-units of the currency per unit of the base currency
+
+        private Table(String base, Map<String, Long> rates) {
+            this.base = base;
+            this.rates = rates;
+        }
+
+        private static Table read(Path file) throws IOException {
+            String base = null;
+            Map<String, Long> rates = new HashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] words = line.split("\\s+");
+                    if (words.length != 2) {
+                        throw new IOException(file + ":" + lineNumber + ": expected <currency> <rate>");
+                    }
+                    String code = words[1].toUpperCase(Locale.ROOT);
+                    if (words[0].equalsIgnoreCase("BASE")) {
+                        base = code;
+                        continue;
+                    }
+                    try {
+                        long rate = Money.parseRate(words[1]);
+                        if (rate <= 0) {
+                            throw new NumberFormatException("Rate must be positive");
+                        }
+                        rates.put(words[0].toUpperCase(Locale.ROOT), rate);
+                    } catch (NumberFormatException | ArithmeticException e) {
+                        throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+            if (base == null) {
+                throw new IOException(file + ": no BASE line");
+            }
+            rates.put(base, Money.RATE_SCALE);
+            return new Table(base, Collections.unmodifiableMap(rates));
+        }
+
+        /**
+         * Returns the base currency, whose rate is 1.
+         */
+        public String getBase() {
+            return base;
+        }
+
+        /**
+         * Returns the currencies in the table.
+         */
+        public Map<String, Long> getRates() {
+            return rates;
+        }
+
+        /**
+         * Returns true if a currency is in the table.
+         *
+         * @param code The currency code, in upper case.
+         */
+        public boolean contains(String code) {
+            return rates.containsKey(code);
+        }
+
+        /**
+         * Returns the rate of a currency against the base currency.
+         *
+         * @param code The currency code, in upper case.
+         * @return The rate in micro-units.
+         * @throws IllegalArgumentException If the currency is not in the table.
+         */
+        public long rate(String code) {
+            Long rate = rates.get(code);
+            if (rate == null) {
+                throw new IllegalArgumentException("Unknown currency " + code);
+            }
+            return rate;
+        }
+
+        /**
+         * Converts an amount between two currencies through the base currency. The cross rate is
+         * not rounded; only the result is.
+         *
+         * @param cents    The amount in cents of the from currency.
+         * @param from     The currency code of the amount, in upper case.
+         * @param to       The currency code to convert to, in upper case.
+         * @param rounding How to round to whole cents.
+         * @return The converted amount in cents of the to currency.
+         * @throws IllegalArgumentException If a currency is not in the table.
+         */
+        public long convert(long cents, String from, String to, RoundingMode rounding) {
+            return Money.convert(cents, rate(to), rate(from), rounding);
+        }
+    }
+}
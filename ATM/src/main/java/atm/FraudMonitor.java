@@ -0,0 +1,513 @@
+package atm;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A streaming stage that watches account operations for unusual patterns.
+ *
+ * Operations are handed over through a bounded ring buffer of primitive slots, the same way
+ * {@link EventSink} takes events, and one monitor thread keeps sliding-window statistics:
+ * <ul>
+ * <li>BURST: too many operations, or too much money withdrawn and transferred out, on one account;</li>
+ * <li>FAN_IN: transfers from too many different accounts into one account;</li>
+ * <li>PIN_SPRAY: wrong PINs, or logins to accounts that do not exist, on too many different
+ * accounts, each one staying under the lockout.</li>
+ * </ul>
+ * A window is {@value #BUCKETS} buckets of {@value #BUCKET_MILLIS} ms, so it slides in steps of one
+ * bucket. Only recently active accounts are tracked, in fixed-size tables whose entries are reused
+ * once their window has passed, so the state never grows. Different accounts are counted with
+ * bitmaps (linear counting), which is approximate but needs no sets. A bitmap has at least twice as
+ * many bits as its limit, so it is far from full when the limit is reached; raising a limit resizes
+ * the bitmaps and starts their windows over. If the monitor falls behind, operations are dropped
+ * from monitoring instead of being slowed down.
+ */
+public class FraudMonitor implements AutoCloseable {
+    static final byte DEPOSIT = 0;
+    static final byte WITHDRAW = 1;
+    static final byte TRANSFER = 2;
+    static final byte PIN_FAILURE = 3;
+
+    static final long BUCKET_MILLIS = 10_000;
+    static final int BUCKETS = 6;
+    private static final int MIN_SPRAY_WORDS = 16; // 1024 bits
+
+    /**
+     * The patterns the monitor reports.
+     */
+    public enum Alert {
+        BURST,
+        FAN_IN,
+        PIN_SPRAY
+    }
+
+    /**
+     * Receives alerts, on the monitor thread.
+     */
+    public interface Listener {
+        /**
+         * Called at most once per window for each account and pattern.
+         *
+         * @param alert     The pattern.
+         * @param accountId The account, or -1 for PIN_SPRAY, which is not about one account.
+         * @param value     The value that went over the limit: operations, cents, or (estimated) accounts.
+         * @param timestamp The time of the operation that triggered the alert.
+         */
+        void alert(Alert alert, long accountId, long value, long timestamp);
+    }
+
+    private final Listener listener;
+    private final byte[] kinds;
+    private final long[] accounts;
+    private final long[] targets;
+    private final long[] amounts;
+    private final long[] times;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLongArray alerts = new AtomicLongArray(Alert.values().length);
+    private final Thread monitor;
+    private volatile long processed;
+    private volatile boolean monitorParked;
+    private volatile boolean closed;
+
+    // Only used by the monitor thread
+    private final int trackedAccounts;
+    private final WindowTable outgoing;
+    private WindowTable incoming;
+    private final long[] sprayEpochs = new long[BUCKETS];
+    private long[] sprayBits;
+    private int sprayWords;
+    private long sprayAlertEpoch = Long.MIN_VALUE / 2;
+
+    private volatile int maxOperations = 20;
+    private volatile long maxDebits = Money.of(5000, 0);
+    private volatile int maxSources = 10;
+    private volatile int maxSprayAccounts = 50;
+
+    /**
+     * Creates a monitor and starts its thread.
+     *
+     * @param capacity        The number of operations that can wait for the monitor, rounded up to a power of two.
+     * @param trackedAccounts The number of accounts whose windows are kept at once, rounded up to a power of two.
+     * @param listener        Receives the alerts.
+     */
+    public FraudMonitor(int capacity, int trackedAccounts, Listener listener) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.listener = listener;
+        this.kinds = new byte[size];
+        this.accounts = new long[size];
+        this.targets = new long[size];
+        this.amounts = new long[size];
+        this.times = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.trackedAccounts = trackedAccounts;
+        this.outgoing = new WindowTable(trackedAccounts, 0);
+        this.incoming = new WindowTable(trackedAccounts, bitmapWords(maxSources, 1));
+        this.sprayWords = bitmapWords(maxSprayAccounts, MIN_SPRAY_WORDS);
+        this.sprayBits = new long[BUCKETS * sprayWords];
+        Arrays.fill(sprayEpochs, Long.MIN_VALUE);
+        this.monitor = new Thread(this::run, "atm-fraud-monitor");
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+
+    /**
+     * Returns the number of 64-bit words of a bitmap that counts up to a limit: a power of two
+     * with at least twice as many bits as the limit.
+     */
+    private static int bitmapWords(int limit, int minWords) {
+        int words = (int) Math.min(1 << 20, (2L * Math.max(limit, 1) + 63) / 64);
+        return Math.max(minWords, Integer.highestOneBit(words - 1) << 1);
+    }
+
+    /**
+     * Sets the BURST limits for one account within a window.
+     *
+     * @param maxOperations The number of deposits, withdrawals and transfers out, including rejected ones.
+     * @param maxDebits     The money withdrawn and transferred out, in cents.
+     */
+    public void setBurstLimits(int maxOperations, long maxDebits) {
+        this.maxOperations = maxOperations;
+        this.maxDebits = maxDebits;
+    }
+
+    /**
+     * Sets how many different accounts may transfer into one account within a window.
+     *
+     * @param maxSources The number of source accounts.
+     */
+    public void setFanInLimit(int maxSources) {
+        this.maxSources = maxSources;
+    }
+
+    /**
+     * Sets on how many different accounts wrong PINs, or logins to unknown accounts, may be entered
+     * within a window.
+     *
+     * @param maxAccounts The number of accounts.
+     */
+    public void setPinSprayLimit(int maxAccounts) {
+        this.maxSprayAccounts = maxAccounts;
+    }
+
+    /**
+     * Hands an operation to the monitor without waiting. Called on the transaction path.
+     *
+     * @param kind            DEPOSIT, WITHDRAW, TRANSFER or PIN_FAILURE.
+     * @param accountId       The account, or the source account of a transfer.
+     * @param targetAccountId The target account of a transfer, otherwise null.
+     * @param amount          The amount in cents.
+     * @param result          The result of the operation. Only successful operations count as money moved.
+     */
+    void record(byte kind, String accountId, String targetAccountId, long amount, TransactionResult result) {
+        long id = AccountStore.parseId(accountId);
+        if (id < 0 || closed) {
+            return;
+        }
+        long target = targetAccountId != null ? AccountStore.parseId(targetAccountId) : -1;
+        long moved = result == TransactionResult.SUCCESS ? amount : 0;
+        long sequence = tail.get();
+        while (true) {
+            int index = (int) sequence & mask;
+            long slotSequence = sequences.get(index);
+            if (slotSequence == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    kinds[index] = kind;
+                    accounts[index] = id;
+                    targets[index] = target;
+                    amounts[index] = moved;
+                    times[index] = System.currentTimeMillis();
+                    sequences.set(index, sequence + 1); // Hands the slot to the monitor
+                    if (monitorParked) {
+                        LockSupport.unpark(monitor);
+                    }
+                    return;
+                }
+                sequence = tail.get();
+            } else if (slotSequence < sequence) {
+                dropped.incrementAndGet(); // The monitor has not caught up
+                return;
+            } else {
+                sequence = tail.get(); // Another producer took this slot
+            }
+        }
+    }
+
+    /**
+     * Returns how many operations the monitor has looked at.
+     *
+     * @return The number of operations.
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Returns how many operations were not monitored because the monitor could not keep up.
+     *
+     * @return The number of operations.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns how many alerts of a kind were raised.
+     *
+     * @param alert The kind of alert.
+     * @return The number of alerts.
+     */
+    public long getAlertCount(Alert alert) {
+        return alerts.get(alert.ordinal());
+    }
+
+    /**
+     * Waits until every operation handed over so far has been looked at.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (processed < target && monitor.isAlive()) {
+            LockSupport.unpark(monitor);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Runs on the monitor thread: takes operations out of the ring buffer until the monitor is closed.
+     */
+    private void run() {
+        long head = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) == head + 1) {
+                process(kinds[index], accounts[index], targets[index], amounts[index], times[index]);
+                sequences.set(index, head + kinds.length); // Frees the slot for producers
+                head++;
+                if ((head & 255) == 0) {
+                    processed = head;
+                }
+                continue;
+            }
+            processed = head;
+            if (closed && tail.get() == head) {
+                return;
+            }
+            monitorParked = true;
+            if (sequences.get(index) != head + 1 && !closed) {
+                LockSupport.parkNanos(this, 10_000_000);
+            }
+            monitorParked = false;
+        }
+    }
+
+    private void process(byte kind, long account, long target, long amount, long time) {
+        long epoch = time / BUCKET_MILLIS;
+        resizeBitmaps();
+        if (kind == PIN_FAILURE) {
+            checkPinSpray(account, epoch, time);
+            return;
+        }
+        int slot = outgoing.slotOf(account, epoch);
+        outgoing.add(slot, epoch, kind == DEPOSIT ? 0 : amount, 0);
+        long operations = outgoing.count(slot, epoch);
+        long debits = outgoing.sum(slot, epoch);
+        if ((operations > maxOperations || debits > maxDebits) && outgoing.shouldAlert(slot, epoch)) {
+            raise(Alert.BURST, account, operations > maxOperations ? operations : debits, time);
+        }
+        if (kind == TRANSFER && target >= 0) {
+            int targetSlot = incoming.slotOf(target, epoch);
+            incoming.add(targetSlot, epoch, amount, mix(account));
+            long sources = estimateDistinct(incoming.zeros(targetSlot, epoch), incoming.bitCount());
+            if (sources > maxSources && incoming.shouldAlert(targetSlot, epoch)) {
+                raise(Alert.FAN_IN, target, sources, time);
+            }
+        }
+    }
+
+    /**
+     * Replaces the bitmaps that are too small for their limits, after a limit was raised.
+     */
+    private void resizeBitmaps() {
+        int incomingWords = bitmapWords(maxSources, 1);
+        if (incomingWords > incoming.words) {
+            incoming = new WindowTable(trackedAccounts, incomingWords);
+        }
+        int words = bitmapWords(maxSprayAccounts, MIN_SPRAY_WORDS);
+        if (words > sprayWords) {
+            sprayWords = words;
+            sprayBits = new long[BUCKETS * words];
+            Arrays.fill(sprayEpochs, Long.MIN_VALUE);
+        }
+    }
+
+    private void checkPinSpray(long account, long epoch, long time) {
+        int bucket = (int) Math.floorMod(epoch, (long) BUCKETS);
+        if (sprayEpochs[bucket] != epoch) {
+            if (sprayEpochs[bucket] > epoch) {
+                return; // Older than the window
+            }
+            sprayEpochs[bucket] = epoch;
+            Arrays.fill(sprayBits, bucket * sprayWords, (bucket + 1) * sprayWords, 0);
+        }
+        int bit = mix(account) & (sprayWords * 64 - 1);
+        sprayBits[bucket * sprayWords + (bit >>> 6)] |= 1L << bit;
+
+        int zeros = 0;
+        for (int word = 0; word < sprayWords; word++) {
+            long bits = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                if (sprayEpochs[b] > epoch - BUCKETS) {
+                    bits |= sprayBits[b * sprayWords + word];
+                }
+            }
+            zeros += 64 - Long.bitCount(bits);
+        }
+        long accounts = estimateDistinct(zeros, sprayWords * 64);
+        if (accounts > maxSprayAccounts && epoch >= sprayAlertEpoch + BUCKETS) {
+            sprayAlertEpoch = epoch;
+            raise(Alert.PIN_SPRAY, -1, accounts, time);
+        }
+    }
+
+    private void raise(Alert alert, long accountId, long value, long time) {
+        alerts.incrementAndGet(alert.ordinal());
+        try {
+            listener.alert(alert, accountId, value, time);
+        } catch (RuntimeException e) {
+            System.err.println("Fraud alert listener failed: " + e); // Keep monitoring
+        }
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Estimates the number of different values from the zero bits of a bitmap they were hashed into.
+     */
+    private static long estimateDistinct(int zeros, int size) {
+        return Math.round(size * Math.log((double) size / Math.max(zeros, 1)));
+    }
+
+    /**
+     * Stops the monitor thread once it has looked at every operation handed over so far.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(monitor);
+        try {
+            monitor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sliding windows for a bounded number of accounts: an open-addressing table whose entries hold a
+     * ring of time buckets. An entry whose window has passed is free to be taken by another account;
+     * if none is free within a few probes, the least recently active entry is replaced.
+     */
+    static final class WindowTable {
+        private static final int MAX_PROBES = 16;
+
+        final int words;
+        private final long[] keys; // Account ID + 1, 0 for an empty entry
+        private final long[] lastEpochs;
+        private final long[] alertEpochs;
+        private final long[] bucketEpochs;
+        private final int[] counts;
+        private final long[] sums;
+        private final long[] bits; // words per bucket
+        private final int mask;
+
+        /**
+         * @param capacity The number of accounts, rounded up to a power of two.
+         * @param words    The 64-bit words of each bucket's bitmap, a power of two, or 0 for none.
+         */
+        WindowTable(int capacity, int words) {
+            int size = Integer.highestOneBit(Math.max(MAX_PROBES, capacity - 1)) << 1;
+            this.words = words;
+            this.keys = new long[size];
+            this.lastEpochs = new long[size];
+            this.alertEpochs = new long[size];
+            this.bucketEpochs = new long[size * BUCKETS];
+            this.counts = new int[size * BUCKETS];
+            this.sums = new long[size * BUCKETS];
+            this.bits = new long[size * BUCKETS * words];
+            this.mask = size - 1;
+        }
+
+        /**
+         * Returns the entry of an account, taking over a free or the oldest entry if it has none.
+         */
+        int slotOf(long accountId, long epoch) {
+            long key = accountId + 1;
+            int index = mix(accountId) & mask;
+            int victim = -1;
+            for (int probe = 0; probe < MAX_PROBES; probe++, index = (index + 1) & mask) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                if (keys[index] == 0) {
+                    victim = index;
+                    break; // Entries are never emptied, so the account is not further on
+                }
+                if (victim < 0 || lastEpochs[index] < lastEpochs[victim]) {
+                    victim = index;
+                }
+            }
+            keys[victim] = key;
+            lastEpochs[victim] = epoch;
+            alertEpochs[victim] = Long.MIN_VALUE / 2;
+            for (int b = 0; b < BUCKETS; b++) {
+                bucketEpochs[victim * BUCKETS + b] = Long.MIN_VALUE;
+            }
+            return victim;
+        }
+
+        /**
+         * @param hash The hash of the value to count in the bitmap; ignored if there is none.
+         */
+        void add(int slot, long epoch, long amount, int hash) {
+            int bucket = slot * BUCKETS + (int) Math.floorMod(epoch, (long) BUCKETS);
+            if (bucketEpochs[bucket] != epoch) {
+                if (bucketEpochs[bucket] > epoch) {
+                    return; // Older than the window
+                }
+                bucketEpochs[bucket] = epoch;
+                counts[bucket] = 0;
+                sums[bucket] = 0;
+                Arrays.fill(bits, bucket * words, (bucket + 1) * words, 0);
+            }
+            counts[bucket]++;
+            sums[bucket] += amount;
+            if (words > 0) {
+                int bit = hash & (words * 64 - 1);
+                bits[bucket * words + (bit >>> 6)] |= 1L << bit;
+            }
+            lastEpochs[slot] = Math.max(lastEpochs[slot], epoch);
+        }
+
+        long count(int slot, long epoch) {
+            long total = 0;
+            for (int b = slot * BUCKETS; b < (slot + 1) * BUCKETS; b++) {
+                if (bucketEpochs[b] > epoch - BUCKETS) {
+                    total += counts[b];
+                }
+            }
+            return total;
+        }
+
+        long sum(int slot, long epoch) {
+            long total = 0;
+            for (int b = slot * BUCKETS; b < (slot + 1) * BUCKETS; b++) {
+                if (bucketEpochs[b] > epoch - BUCKETS) {
+                    total += sums[b];
+                }
+            }
+            return total;
+        }
+
+        int bitCount() {
+            return words * 64;
+        }
+
+        /**
+         * Returns the number of zero bits in the union of the bitmaps of the window.
+         */
+        int zeros(int slot, long epoch) {
+            int zeros = 0;
+            for (int word = 0; word < words; word++) {
+                long union = 0;
+                for (int b = slot * BUCKETS; b < (slot + 1) * BUCKETS; b++) {
+                    if (bucketEpochs[b] > epoch - BUCKETS) {
+                        union |= bits[b * words + word];
+                    }
+                }
+                zeros += 64 - Long.bitCount(union);
+            }
+            return zeros;
+        }
+
+        /**
+         * Returns true, at most once per window, when an entry goes over a limit.
+         */
+        boolean shouldAlert(int slot, long epoch) {
+            if (epoch < alertEpochs[slot] + BUCKETS) {
+                return false;
+            }
+            alertEpochs[slot] = epoch;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package atm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with bounded relative error, in the style of HdrHistogram.
+ *
+ * Values in nanoseconds are counted in log-linear buckets: exact below 64ns, then 32 buckets per
+ * power of two, so every bucket is within about 3% of the values it holds. Recording is a bucket
+ * computation and one atomic add, and never allocates. To keep threads from contending on the
+ * same counters, each thread adds to one of several stripes, which are summed when read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int MAGNITUDES = 42; // Up to 2^48 ns, about three days
+    private static final int BUCKET_COUNT = 64 + MAGNITUDES * SUB_BUCKETS;
+    private static final int STRIPES = 8;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        buckets.getAndIncrement(stripe * BUCKET_COUNT + bucketOf(nanos));
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Records the time since a start time taken with {@link System#nanoTime()}.
+     *
+     * @param startNanos The start time.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < 64) {
+            return (int) Math.max(nanos, 0);
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos); // 6 or more
+        int sub = (int) (nanos >>> (magnitude - 5)) & (SUB_BUCKETS - 1);
+        return Math.min(64 + (magnitude - 6) * SUB_BUCKETS + sub, BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 64) {
+            return bucket;
+        }
+        int magnitude = (bucket - 64) / SUB_BUCKETS + 6;
+        int sub = (bucket - 64) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 5)) - 1;
+    }
+
+    /**
+     * Returns the counts of all buckets, summed over the stripes.
+     */
+    private long[] counts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += buckets.get(stripe * BUCKET_COUNT + i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns a consistent-enough copy of the histogram for reporting.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(counts(), max.get());
+    }
+
+    /**
+     * Clears all counts. Values recorded at the same time may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    /**
+     * The counts of a histogram at one point in time.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            this.max = max;
+            long count = 0;
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                count += counts[i];
+                total += counts[i] * upperBoundOf(i);
+            }
+            this.count = count;
+            this.total = total;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the approximate sum of all recorded values in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return total;
+        }
+
+        /**
+         * Returns the largest recorded value in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given fraction of the values lie.
+         *
+         * @param fraction The fraction, for example 0.99.
+         * @return The percentile in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long percentile(double fraction) {
+            long rank = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return 0;
+        }
+    }
+}
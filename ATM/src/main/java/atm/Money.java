@@ -0,0 +1,187 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money arithmetic on {@code long} amounts in cents.
+ *
+ * Money is passed around as a plain {@code long}, so deposits, withdrawals and transfers are
+ * exact and allocate nothing. Exchange rates are {@code long} values in millionths (micro-units),
+ * so a rate of 0.92 is 920000. Conversions round with an explicit {@link RoundingMode}.
+ */
+public final class Money {
+    /** Number of cents in one dollar. */
+    public static final long CENTS_PER_UNIT = 100;
+
+    /** Number of micro-units in an exchange rate of 1. */
+    public static final long RATE_SCALE = 1_000_000;
+
+    private Money() {
+    }
+
+    /**
+     * Returns the amount in cents for a whole number of dollars and cents.
+     *
+     * @param dollars The whole dollars.
+     * @param cents   The extra cents, from 0 to 99.
+     * @return The amount in cents.
+     */
+    public static long of(long dollars, int cents) {
+        if (cents < 0 || cents >= CENTS_PER_UNIT) {
+            throw new IllegalArgumentException("Cents must be between 0 and 99");
+        }
+        return Math.addExact(Math.multiplyExact(dollars, CENTS_PER_UNIT), cents);
+    }
+
+    /**
+     * Parses a decimal amount such as "12", "12.5" or "12.50" into cents without going through
+     * {@code double}.
+     *
+     * @param text The amount. At most two decimal places are allowed.
+     * @return The amount in cents.
+     * @throws NumberFormatException If the text is not a valid amount.
+     */
+    public static long parse(String text) {
+        return parseScaled(text, 2);
+    }
+
+    /**
+     * Parses a decimal exchange rate such as "0.92" into micro-units.
+     *
+     * @param text The rate. At most six decimal places are allowed.
+     * @return The rate in micro-units.
+     * @throws NumberFormatException If the text is not a valid rate.
+     */
+    public static long parseRate(String text) {
+        return parseScaled(text, 6);
+    }
+
+    private static long parseScaled(String text, int scale) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        long value = 0;
+        int decimals = -1;
+        boolean digits = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals >= 0 && ++decimals > scale) {
+                    throw new NumberFormatException("Too many decimal places: " + text);
+                }
+                value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+                digits = true;
+            } else {
+                throw new NumberFormatException("Not an amount: " + text);
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+
+        for (int d = Math.max(decimals, 0); d < scale; d++) {
+            value = Math.multiplyExact(value, 10);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Formats an amount in cents as a decimal, for example 12345 as "123.45".
+     *
+     * @param cents The amount in cents.
+     * @return The formatted amount.
+     */
+    public static String format(long cents) {
+        long units = Math.abs(cents / CENTS_PER_UNIT);
+        long fraction = Math.abs(cents % CENTS_PER_UNIT);
+        return (cents < 0 ? "-" : "") + units + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    /**
+     * Converts an amount with an exchange rate, rounding exactly to whole cents.
+     *
+     * @param cents      The amount in cents.
+     * @param rateMicros The exchange rate in micro-units.
+     * @param rounding   How to round a result that falls between two cents.
+     * @return The converted amount in cents.
+     * @throws ArithmeticException If the rounding mode is UNNECESSARY and rounding is needed.
+     */
+    public static long convert(long cents, long rateMicros, RoundingMode rounding) {
+        return convert(cents, rateMicros, RATE_SCALE, rounding);
+    }
+
+    /**
+     * Converts an amount with the exchange rate numerator / denominator, rounding exactly to whole
+     * cents. Used for cross rates, which are the ratio of two rates against a base currency.
+     *
+     * @param cents       The amount in cents.
+     * @param numerator   The numerator of the rate.
+     * @param denominator The denominator of the rate, positive and at most Long.MAX_VALUE / 2.
+     * @param rounding    How to round a result that falls between two cents.
+     * @return The converted amount in cents.
+     * @throws ArithmeticException If the rounding mode is UNNECESSARY and rounding is needed.
+     */
+    public static long convert(long cents, long numerator, long denominator, RoundingMode rounding) {
+        long high = Math.multiplyHigh(cents, numerator);
+        long product = cents * numerator;
+        if (high != (product >> 63)) {
+            // The product does not fit in a long; this is far off the hot path
+            return BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(numerator))
+                    .divide(BigDecimal.valueOf(denominator), 0, rounding).longValueExact();
+        }
+        return divide(product, denominator, rounding);
+    }
+
+    /**
+     * Divides two longs and rounds the quotient with the given rounding mode.
+     *
+     * @param dividend The dividend.
+     * @param divisor  The divisor, which must be positive and at most Long.MAX_VALUE / 2.
+     * @param rounding The rounding mode.
+     * @return The rounded quotient.
+     */
+    static long divide(long dividend, long divisor, RoundingMode rounding) {
+        long quotient = Math.floorDiv(dividend, divisor);
+        long remainder = Math.floorMod(dividend, divisor); // Always >= 0, so quotient is the floor
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        boolean roundUp;
+        long twice = remainder * 2; // Cannot overflow for divisors up to Long.MAX_VALUE / 2
+        switch (rounding) {
+            case FLOOR:
+                roundUp = false;
+                break;
+            case CEILING:
+                roundUp = true;
+                break;
+            case DOWN:
+                roundUp = quotient < 0;
+                break;
+            case UP:
+                roundUp = quotient >= 0;
+                break;
+            case HALF_UP:
+                roundUp = twice > divisor || (twice == divisor && quotient >= 0);
+                break;
+            case HALF_DOWN:
+                roundUp = twice > divisor || (twice == divisor && quotient < 0);
+                break;
+            case HALF_EVEN:
+                roundUp = twice > divisor || (twice == divisor && (quotient & 1) != 0);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return roundUp ? quotient + 1 : quotient;
+    }
+}
@@ -0,0 +1,179 @@
+package atm;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel over integer entries, such as account records.
+ *
+ * Each entry can have one pending deadline. Instead of a timer object per entry, the entries are
+ * linked into the wheel's slots through parallel primitive arrays indexed by entry number, so
+ * scheduling, rescheduling and cancelling are O(1) and cost no allocation. The wheel has four
+ * levels of 64 slots: level 0 holds deadlines within the next 64 ticks, level 1 within 64^2 ticks
+ * and so on. When a tick crosses into a new slot of a higher level, that slot's entries move down
+ * a level, so each advance only touches the entries that are due soon.
+ *
+ * The wheel is not thread-safe; callers synchronize on it.
+ */
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int NONE = -1;
+
+    private final long tickMillis;
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private long tick;
+
+    // Per entry: the neighbours in its slot list, the slot it is in (NONE if not scheduled) and its deadline tick
+    private int[][] next = new int[0][];
+    private int[][] previous = new int[0][];
+    private int[][] slots = new int[0][];
+    private long[][] deadlines = new long[0][];
+
+    private int[] expired = new int[64];
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param tickMillis  The resolution of the wheel in milliseconds.
+     * @param startMillis The current time in milliseconds.
+     */
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.tick = startMillis / tickMillis;
+        Arrays.fill(heads, NONE);
+    }
+
+    /**
+     * Schedules an entry, replacing its previous deadline if it had one. A deadline that has
+     * already passed fires on the next tick.
+     *
+     * @param entry          The entry number, 0 or more.
+     * @param deadlineMillis The time at which the entry is due.
+     */
+    public void schedule(int entry, long deadlineMillis) {
+        ensurePage(entry);
+        cancel(entry);
+        long deadline = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), tick + 1);
+        deadlines[entry >>> PAGE_SHIFT][entry & PAGE_MASK] = deadline;
+        insert(entry, deadline);
+    }
+
+    /**
+     * Removes an entry's pending deadline, if it has one.
+     *
+     * @param entry The entry number.
+     */
+    public void cancel(int entry) {
+        if (!isScheduled(entry)) {
+            return;
+        }
+        int page = entry >>> PAGE_SHIFT;
+        int offset = entry & PAGE_MASK;
+        int before = previous[page][offset];
+        int after = next[page][offset];
+        if (before == NONE) {
+            heads[slots[page][offset]] = after;
+        } else {
+            next[before >>> PAGE_SHIFT][before & PAGE_MASK] = after;
+        }
+        if (after != NONE) {
+            previous[after >>> PAGE_SHIFT][after & PAGE_MASK] = before;
+        }
+        slots[page][offset] = NONE;
+    }
+
+    /**
+     * Returns whether an entry has a pending deadline.
+     *
+     * @param entry The entry number.
+     */
+    public boolean isScheduled(int entry) {
+        int page = entry >>> PAGE_SHIFT;
+        return page < slots.length && slots[page][entry & PAGE_MASK] != NONE;
+    }
+
+    /**
+     * Moves the wheel forward to the given time and removes every entry that has become due.
+     *
+     * @param nowMillis The current time in milliseconds.
+     * @return The entries that became due, in no particular order.
+     */
+    public int[] advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        int count = 0;
+        while (tick < target) {
+            tick++;
+            // Move entries down from the higher levels whose slot starts at this tick, top level first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level * SLOTS + ((int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            int slot = (int) tick & SLOT_MASK;
+            for (int entry = heads[slot]; entry != NONE; entry = next[entry >>> PAGE_SHIFT][entry & PAGE_MASK]) {
+                slots[entry >>> PAGE_SHIFT][entry & PAGE_MASK] = NONE;
+                if (count == expired.length) {
+                    expired = Arrays.copyOf(expired, count * 2);
+                }
+                expired[count++] = entry;
+            }
+            heads[slot] = NONE;
+        }
+        return Arrays.copyOf(expired, count);
+    }
+
+    private void cascade(int slot) {
+        int entry = heads[slot];
+        heads[slot] = NONE;
+        while (entry != NONE) {
+            int following = next[entry >>> PAGE_SHIFT][entry & PAGE_MASK];
+            insert(entry, deadlines[entry >>> PAGE_SHIFT][entry & PAGE_MASK]);
+            entry = following;
+        }
+    }
+
+    private void insert(int entry, long deadline) {
+        long delta = Math.min(deadline - tick, MAX_DELTA);
+        long placed = tick + delta; // Deadlines beyond the top level wait in its farthest slot
+        int level = 0;
+        while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = level * SLOTS + ((int) (placed >>> (SLOT_BITS * level)) & SLOT_MASK);
+        int page = entry >>> PAGE_SHIFT;
+        int offset = entry & PAGE_MASK;
+        int head = heads[slot];
+        next[page][offset] = head;
+        previous[page][offset] = NONE;
+        if (head != NONE) {
+            previous[head >>> PAGE_SHIFT][head & PAGE_MASK] = entry;
+        }
+        heads[slot] = entry;
+        slots[page][offset] = slot;
+    }
+
+    private void ensurePage(int entry) {
+        int pages = (entry >>> PAGE_SHIFT) + 1;
+        if (pages <= slots.length) {
+            return;
+        }
+        int oldPages = slots.length;
+        next = Arrays.copyOf(next, pages);
+        previous = Arrays.copyOf(previous, pages);
+        slots = Arrays.copyOf(slots, pages);
+        deadlines = Arrays.copyOf(deadlines, pages);
+        for (int page = oldPages; page < pages; page++) {
+            next[page] = new int[PAGE_SIZE];
+            previous[page] = new int[PAGE_SIZE];
+            slots[page] = new int[PAGE_SIZE];
+            deadlines[page] = new long[PAGE_SIZE];
+            Arrays.fill(slots[page], NONE);
+        }
+    }
+}
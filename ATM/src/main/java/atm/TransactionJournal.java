@@ -0,0 +1,414 @@
+package atm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, memory-mapped write-ahead journal of ATM operations.
+ *
+ * Every record is written as [payload length][CRC32 of payload][payload]. Records are copied
+ * into a mapped region of the file, and callers wait for durability with {@link #awaitDurable(long)}.
+ * The first waiter syncs the mapping for everybody who appended before it (group commit), so many
+ * operations share a single fsync. On recovery the journal is read until the first empty or
+ * damaged record, which is where a crash cut it off.
+ */
+public class TransactionJournal implements AutoCloseable {
+    static final byte OPEN_ACCOUNT = 1;
+    static final byte DEPOSIT = 2;
+    static final byte WITHDRAW = 3;
+    static final byte TRANSFER = 4;
+    static final byte CHANGE_PIN = 5;
+
+    private static final int MAGIC = 0x41544D4A; // "ATMJ"
+    private static final int VERSION = 3; // Version 2 stores amounts as long cents, version 3 PIN hashes instead of PINs
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 4096;
+    static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[MAX_PAYLOAD_SIZE];
+    private MappedByteBuffer region;
+    private long regionStart;
+    private volatile long writePosition;
+
+    private final Object syncMonitor = new Object();
+    private long durablePosition;
+    private boolean syncInProgress;
+
+    /**
+     * Receives the records of a journal during replay. Each record comes with its position: the
+     * journal position right after it, the same value its append method returned.
+     */
+    public interface Visitor {
+        void openAccount(long position, long timestamp, String accountId, long initialBalanceCents, long pinHash);
+
+        void deposit(long position, long timestamp, String accountId, long amountCents);
+
+        void withdraw(long position, long timestamp, String accountId, long amountCents);
+
+        void transfer(long position, long timestamp, String sourceAccountId, String targetAccountId, long amountCents);
+
+        void changePin(long position, long timestamp, String accountId, long pinHash);
+    }
+
+    private TransactionJournal(FileChannel channel, long endOfLog) throws IOException {
+        this.channel = channel;
+        this.writePosition = endOfLog;
+        this.durablePosition = endOfLog;
+        mapRegion(endOfLog);
+    }
+
+    /**
+     * Opens a journal file, replaying every intact record into the visitor, and positions the
+     * journal for new appends right after the last intact record.
+     *
+     * @param file    The journal file. It is created if it does not exist.
+     * @param visitor Receives the replayed records, may be null.
+     * @return The journal, ready for appends.
+     */
+    public static TransactionJournal open(Path file, Visitor visitor) {
+        return open(file, FILE_HEADER_SIZE, visitor);
+    }
+
+    /**
+     * Opens a journal file, replaying the intact records from a given position on, for example
+     * the position at which a checkpoint of the accounts was started.
+     *
+     * @param file          The journal file. It is created if it does not exist.
+     * @param startPosition A position returned by an append method or by {@link #position()}.
+     * @param visitor       Receives the replayed records, may be null.
+     * @return The journal, ready for appends.
+     */
+    public static TransactionJournal open(Path file, long startPosition, Visitor visitor) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long endOfLog;
+            if (channel.size() < FILE_HEADER_SIZE) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION);
+                header.force();
+                endOfLog = FILE_HEADER_SIZE;
+            } else {
+                endOfLog = replay(channel, Math.max(startPosition, FILE_HEADER_SIZE), visitor);
+            }
+            return new TransactionJournal(channel, endOfLog);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal " + file, e);
+        }
+    }
+
+    /**
+     * Reads all intact records from the start position on and returns the position right after the last one.
+     */
+    private static long replay(FileChannel channel, long startPosition, Visitor visitor) throws IOException {
+        long size = channel.size();
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[MAX_PAYLOAD_SIZE];
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a transaction journal");
+        }
+        if (header.getInt() != VERSION) {
+            throw new IOException("Unsupported transaction journal version");
+        }
+        if (startPosition > size) {
+            throw new IOException("Journal ends before position " + startPosition);
+        }
+        long position = startPosition;
+
+        while (position < size) {
+            long length = Math.min(REGION_SIZE, size - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int start = buffer.position();
+                int payloadLength = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (payloadLength <= 0 || payloadLength > MAX_PAYLOAD_SIZE) {
+                    return position + start; // End of log, or a torn record header
+                }
+                if (buffer.remaining() < payloadLength) {
+                    if (position + start + RECORD_HEADER_SIZE + payloadLength > size) {
+                        return position + start; // Torn record at the end of the file
+                    }
+                    buffer.position(start); // Record crosses the mapped window; remap from here
+                    break;
+                }
+                buffer.get(payload, 0, payloadLength);
+                crc.reset();
+                crc.update(payload, 0, payloadLength);
+                if ((int) crc.getValue() != checksum) {
+                    return position + start; // Damaged record, everything after it is discarded
+                }
+                if (visitor != null) {
+                    dispatch(position + buffer.position(), payload, payloadLength, visitor);
+                }
+            }
+            if (buffer.position() == 0) {
+                return position;
+            }
+            position += buffer.position();
+            if (position + RECORD_HEADER_SIZE > size) {
+                return position;
+            }
+        }
+        return position;
+    }
+
+    private static void dispatch(long position, byte[] payload, int length, Visitor visitor) {
+        RecordReader reader = new RecordReader(payload, length);
+        byte type = reader.readByte();
+        long timestamp = reader.readLong();
+        switch (type) {
+            case OPEN_ACCOUNT:
+                visitor.openAccount(position, timestamp, reader.readString(), reader.readLong(), reader.readLong());
+                break;
+            case DEPOSIT:
+                visitor.deposit(position, timestamp, reader.readString(), reader.readLong());
+                break;
+            case WITHDRAW:
+                visitor.withdraw(position, timestamp, reader.readString(), reader.readLong());
+                break;
+            case TRANSFER:
+                visitor.transfer(position, timestamp, reader.readString(), reader.readString(), reader.readLong());
+                break;
+            case CHANGE_PIN:
+                visitor.changePin(position, timestamp, reader.readString(), reader.readLong());
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Appends an account opening record. The PIN is journaled only as its hash.
+     *
+     * @param pinHash The hash of the PIN, see {@link AccountStore#hashPin(long, String)}.
+     * @return The journal position to pass to {@link #awaitDurable(long)}.
+     */
+    public long appendOpenAccount(String accountId, long initialBalanceCents, long pinHash) {
+        synchronized (this) {
+            int length = writeHeader(OPEN_ACCOUNT);
+            length = writeString(length, accountId);
+            length = writeLong(length, initialBalanceCents);
+            length = writeLong(length, pinHash);
+            return commitRecord(length);
+        }
+    }
+
+    /**
+     * Appends a deposit or withdrawal record.
+     *
+     * @param type Either {@link #DEPOSIT} or {@link #WITHDRAW}.
+     * @return The journal position to pass to {@link #awaitDurable(long)}.
+     */
+    public long appendAmount(byte type, String accountId, long amountCents) {
+        synchronized (this) {
+            int length = writeHeader(type);
+            length = writeString(length, accountId);
+            length = writeLong(length, amountCents);
+            return commitRecord(length);
+        }
+    }
+
+    /**
+     * Appends a transfer record.
+     *
+     * @return The journal position to pass to {@link #awaitDurable(long)}.
+     */
+    public long appendTransfer(String sourceAccountId, String targetAccountId, long amountCents) {
+        synchronized (this) {
+            int length = writeHeader(TRANSFER);
+            length = writeString(length, sourceAccountId);
+            length = writeString(length, targetAccountId);
+            length = writeLong(length, amountCents);
+            return commitRecord(length);
+        }
+    }
+
+    /**
+     * Appends a PIN change record. The PIN is journaled only as its hash.
+     *
+     * @param pinHash The hash of the new PIN, see {@link AccountStore#hashPin(long, String)}.
+     * @return The journal position to pass to {@link #awaitDurable(long)}.
+     */
+    public long appendChangePin(String accountId, long pinHash) {
+        synchronized (this) {
+            int length = writeHeader(CHANGE_PIN);
+            length = writeString(length, accountId);
+            length = writeLong(length, pinHash);
+            return commitRecord(length);
+        }
+    }
+
+    /**
+     * Blocks until everything up to the given journal position is on disk. One caller performs
+     * the sync for all records appended so far while the others wait for it.
+     *
+     * @param position A position returned by one of the append methods.
+     */
+    public void awaitDurable(long position) {
+        while (true) {
+            synchronized (syncMonitor) {
+                while (durablePosition < position && syncInProgress) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the journal", e);
+                    }
+                }
+                if (durablePosition >= position) {
+                    return;
+                }
+                syncInProgress = true;
+            }
+
+            long target;
+            try {
+                MappedByteBuffer toSync;
+                synchronized (this) {
+                    target = writePosition;
+                    toSync = region;
+                }
+                toSync.force();
+            } catch (RuntimeException e) {
+                synchronized (syncMonitor) {
+                    syncInProgress = false;
+                    syncMonitor.notifyAll();
+                }
+                throw e;
+            }
+
+            synchronized (syncMonitor) {
+                durablePosition = Math.max(durablePosition, target);
+                syncInProgress = false;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the position right after the last appended record.
+     */
+    public long position() {
+        return writePosition;
+    }
+
+    /**
+     * Syncs all records and trims the unused tail of the last mapped region from the file.
+     */
+    @Override
+    public void close() {
+        awaitDurable(writePosition);
+        try {
+            synchronized (this) {
+                region = null;
+                channel.truncate(writePosition);
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close journal", e);
+        }
+    }
+
+    private int writeHeader(byte type) {
+        scratch[0] = type;
+        return writeLong(1, System.currentTimeMillis());
+    }
+
+    private int writeLong(int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            scratch[offset++] = (byte) (value >>> (i * 8));
+        }
+        return offset;
+    }
+
+    private int writeString(int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (offset + 2 + bytes.length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Journal record too large");
+        }
+        scratch[offset++] = (byte) (bytes.length >>> 8);
+        scratch[offset++] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, scratch, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    /**
+     * Copies the record in the scratch buffer into the mapped file. Must hold the journal lock.
+     */
+    private long commitRecord(int payloadLength) {
+        int recordLength = RECORD_HEADER_SIZE + payloadLength;
+        long position = writePosition;
+        if (position + recordLength > regionStart + REGION_SIZE) {
+            region.force(); // The old region is unmapped lazily, so make it durable now
+            mapRegion(position);
+        }
+
+        crc.reset();
+        crc.update(scratch, 0, payloadLength);
+        int offset = (int) (position - regionStart);
+        // Write the payload before the length, so a half-written record never looks complete
+        region.putInt(offset + 4, (int) crc.getValue());
+        region.put(offset + RECORD_HEADER_SIZE, scratch, 0, payloadLength);
+        region.putInt(offset, payloadLength);
+        writePosition = position + recordLength;
+        return writePosition;
+    }
+
+    private void mapRegion(long start) {
+        try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+            regionStart = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map journal region", e);
+        }
+    }
+
+    /**
+     * Decodes the fields of one record payload.
+     */
+    private static class RecordReader {
+        private final byte[] data;
+        private final int limit;
+        private int offset;
+
+        RecordReader(byte[] data, int limit) {
+            this.data = data;
+            this.limit = limit;
+        }
+
+        byte readByte() {
+            return data[offset++];
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[offset++] & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() {
+            int length = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+            offset += 2;
+            if (offset + length > limit) {
+                throw new IllegalStateException("Corrupt journal record");
+            }
+            String value = new String(data, offset, length, StandardCharsets.UTF_8);
+            offset += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package atm;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A compact, column-oriented transaction history for one account.
+ *
+ * Each entry is stored as a timestamp, an amount in cents and a one-byte type code in three
+ * parallel primitive arrays, so recording a transaction creates no objects. The arrays grow
+ * by doubling up to a fixed capacity; after that the log becomes a ring buffer and the oldest
+ * entries are overwritten. Text is only produced when an entry is formatted for display.
+ *
+ * Entries are kept in time order, so the timestamp column is itself the time index: a time range
+ * is found with two binary searches, and {@link #query(Filter, long, int[])} only looks at the
+ * entries inside it. Every entry also has a sequence number, its position among all entries ever
+ * recorded, which stays the same when older entries drop out; query pages continue from one.
+ * Monthly totals per type are added up as transactions are recorded, so a {@link Statement} is a
+ * lookup rather than a scan. They cover every transaction of the account, including the ones that
+ * have dropped out of the ring buffer.
+ */
+public class TransactionLog {
+    public static final byte DEPOSIT = 1;
+    public static final byte WITHDRAWAL = 2;
+    public static final byte TRANSFER_IN = 3;
+    public static final byte TRANSFER_OUT = 4;
+
+    /** Default number of entries kept per account before the oldest ones are dropped. */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int TYPES = 4;
+    private static final ZoneId ZONE = ZoneId.systemDefault(); // The zone the entries are displayed in
+
+    private final int maxEntries;
+    private long[] timestamps;
+    private long[] amounts;
+    private byte[] types;
+    private int head; // Physical index of the oldest entry
+    private int size;
+    private long dropped; // Entries overwritten so far, so the sequence number of the oldest entry
+
+    // Monthly totals, one row per month with transactions, oldest first
+    private int[] months = new int[0]; // year * 12 + month - 1
+    private long[] monthTotals = new long[0];
+    private int[] monthCounts = new int[0];
+    private int monthCount;
+    private long monthStart = Long.MAX_VALUE; // Time range of the newest row
+    private long monthEnd = Long.MIN_VALUE;
+
+    /**
+     * Creates an empty log that keeps at most {@link #DEFAULT_MAX_ENTRIES} entries.
+     */
+    public TransactionLog() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates an empty log.
+     *
+     * @param maxEntries The number of entries kept before the oldest ones are overwritten.
+     */
+    public TransactionLog(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        int capacity = Math.min(INITIAL_CAPACITY, maxEntries);
+        this.maxEntries = maxEntries;
+        this.timestamps = new long[capacity];
+        this.amounts = new long[capacity];
+        this.types = new byte[capacity];
+    }
+
+    /**
+     * Records a transaction. A timestamp before the previous entry's, for example after the clock
+     * was set back, is recorded as the previous entry's time to keep the log in time order.
+     *
+     * @param timestamp   The time of the transaction in milliseconds since the epoch.
+     * @param type        The type code, for example {@link #DEPOSIT}.
+     * @param amountCents The amount in cents.
+     */
+    public void add(long timestamp, byte type, long amountCents) {
+        if (size > 0) {
+            timestamp = Math.max(timestamp, timestamps[physicalIndex(size - 1)]);
+        }
+        addToMonth(timestamp, type, amountCents);
+        if (size == timestamps.length && size < maxEntries) {
+            grow();
+        }
+
+        int slot;
+        if (size < timestamps.length) {
+            slot = physicalIndex(size);
+            size++;
+        } else {
+            slot = head; // Full: overwrite the oldest entry
+            head = (head + 1) % timestamps.length;
+            dropped++;
+        }
+        timestamps[slot] = timestamp;
+        amounts[slot] = amountCents;
+        types[slot] = type;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) timestamps.length * 2, maxEntries);
+        long[] newTimestamps = new long[capacity];
+        long[] newAmounts = new long[capacity];
+        byte[] newTypes = new byte[capacity];
+        for (int i = 0; i < size; i++) {
+            int from = physicalIndex(i);
+            newTimestamps[i] = timestamps[from];
+            newAmounts[i] = amounts[from];
+            newTypes[i] = types[from];
+        }
+        timestamps = newTimestamps;
+        amounts = newAmounts;
+        types = newTypes;
+        head = 0;
+    }
+
+    private void addToMonth(long timestamp, byte type, long amountCents) {
+        if (type < DEPOSIT || type > TRANSFER_OUT) {
+            return;
+        }
+        if (timestamp < monthStart || timestamp >= monthEnd) {
+            YearMonth month = YearMonth.from(Instant.ofEpochMilli(timestamp).atZone(ZONE));
+            monthStart = month.atDay(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
+            monthEnd = month.plusMonths(1).atDay(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
+            if (monthCount == months.length) {
+                int capacity = Math.max(4, monthCount * 2);
+                months = Arrays.copyOf(months, capacity);
+                monthTotals = Arrays.copyOf(monthTotals, capacity * TYPES);
+                monthCounts = Arrays.copyOf(monthCounts, capacity * TYPES);
+            }
+            months[monthCount++] = monthKey(month);
+        }
+        int column = (monthCount - 1) * TYPES + type - DEPOSIT;
+        monthTotals[column] += amountCents;
+        monthCounts[column]++;
+    }
+
+    private static int monthKey(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private int physicalIndex(int index) {
+        int slot = head + index;
+        return slot < timestamps.length ? slot : slot - timestamps.length;
+    }
+
+    /**
+     * Returns the number of entries in the log.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the log has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the timestamp of an entry, where index 0 is the oldest entry.
+     */
+    public long timestamp(int index) {
+        return timestamps[physicalIndex(checkIndex(index))];
+    }
+
+    /**
+     * Returns the amount in cents of an entry, where index 0 is the oldest entry.
+     */
+    public long amount(int index) {
+        return amounts[physicalIndex(checkIndex(index))];
+    }
+
+    /**
+     * Returns the type code of an entry, where index 0 is the oldest entry.
+     */
+    public byte type(int index) {
+        return types[physicalIndex(checkIndex(index))];
+    }
+
+    /**
+     * Returns the sequence number of an entry: the number of entries recorded before it, including
+     * the ones that have dropped out of the log.
+     */
+    public long sequence(int index) {
+        return dropped + checkIndex(index);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first entry at or after a time, found by binary search.
+     *
+     * @param timestamp The time in milliseconds since the epoch.
+     * @return The index, or {@link #size()} if all entries are older.
+     */
+    public int indexAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[physicalIndex(middle)] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the entries that match a filter, newest first. Only the entries in the filter's time
+     * range are looked at.
+     *
+     * @param filter         The filter.
+     * @param beforeSequence Only entries with a smaller sequence number are returned. Pass
+     *                       Long.MAX_VALUE for the first page and the sequence number of the last
+     *                       returned entry for the next one; entries added or dropped in between do
+     *                       not shift the page.
+     * @param matches        Receives the indexes of the matching entries; its length is the page size.
+     * @return The number of indexes written to matches.
+     */
+    public int query(Filter filter, long beforeSequence, int[] matches) {
+        int before = (int) Math.max(0, Math.min(size, beforeSequence - dropped));
+        int oldest = indexAtOrAfter(filter.fromMillis);
+        int index = Math.min(before, indexAtOrAfter(filter.toMillis)) - 1;
+        int found = 0;
+        for (; index >= oldest && found < matches.length; index--) {
+            int slot = physicalIndex(index);
+            long amount = amounts[slot];
+            if ((filter.types & (1 << types[slot])) != 0 && amount >= filter.minAmount && amount <= filter.maxAmount) {
+                matches[found++] = index;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the totals of one month.
+     *
+     * @param month The month, in the zone the entries are displayed in.
+     * @return The statement, with all totals 0 if there were no transactions that month.
+     */
+    public Statement statement(YearMonth month) {
+        int row = Arrays.binarySearch(months, 0, monthCount, monthKey(month));
+        if (row < 0) {
+            return new Statement(month, new long[TYPES], new int[TYPES]);
+        }
+        return new Statement(month, Arrays.copyOfRange(monthTotals, row * TYPES, (row + 1) * TYPES),
+                Arrays.copyOfRange(monthCounts, row * TYPES, (row + 1) * TYPES));
+    }
+
+    /**
+     * Returns a copy of this log that is trimmed to its current size.
+     */
+    public TransactionLog copy() {
+        TransactionLog copy = new TransactionLog(maxEntries);
+        copy.timestamps = new long[Math.max(size, 1)];
+        copy.amounts = new long[copy.timestamps.length];
+        copy.types = new byte[copy.timestamps.length];
+        for (int i = 0; i < size; i++) {
+            int from = physicalIndex(i);
+            copy.timestamps[i] = timestamps[from];
+            copy.amounts[i] = amounts[from];
+            copy.types[i] = types[from];
+        }
+        copy.size = size;
+        copy.dropped = dropped;
+        copy.months = Arrays.copyOf(months, monthCount);
+        copy.monthTotals = Arrays.copyOf(monthTotals, monthCount * TYPES);
+        copy.monthCounts = Arrays.copyOf(monthCounts, monthCount * TYPES);
+        copy.monthCount = monthCount;
+        copy.monthStart = monthStart;
+        copy.monthEnd = monthEnd;
+        return copy;
+    }
+
+    /**
+     * Formats one entry for display.
+     *
+     * @param index The entry index, where 0 is the oldest entry.
+     * @return A line such as "2024-08-05 10:15  Deposited: $100.00".
+     */
+    public String format(int index) {
+        String date = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(timestamp(index)));
+        return date + "  " + typeLabel(type(index)) + ": $" + Money.format(amount(index));
+    }
+
+    /**
+     * Returns the display label of a type code.
+     */
+    public static String typeLabel(byte type) {
+        switch (type) {
+            case DEPOSIT:
+                return "Deposited";
+            case WITHDRAWAL:
+                return "Withdrew";
+            case TRANSFER_IN:
+                return "Transfer received";
+            case TRANSFER_OUT:
+                return "Transfer sent";
+            default:
+                return "Unknown";
+        }
+    }
+
+    /**
+     * Selects history entries by time range, type and amount range.
+     */
+    public static class Filter {
+        /** A filter that matches every entry. */
+        public static final Filter ALL = new Filter(Long.MIN_VALUE, Long.MAX_VALUE, 0, 0, Long.MAX_VALUE);
+
+        private final long fromMillis;
+        private final long toMillis;
+        private final int types;
+        private final long minAmount;
+        private final long maxAmount;
+
+        /**
+         * Creates a filter.
+         *
+         * @param fromMillis The start of the time range, inclusive.
+         * @param toMillis   The end of the time range, exclusive.
+         * @param types      The type codes to match, or 0 for all types.
+         * @param minAmount  The smallest amount in cents, inclusive.
+         * @param maxAmount  The largest amount in cents, inclusive.
+         */
+        public Filter(long fromMillis, long toMillis, int types, long minAmount, long maxAmount) {
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.types = types == 0 ? -1 : types;
+            this.minAmount = minAmount;
+            this.maxAmount = maxAmount;
+        }
+
+        /**
+         * Returns the bit of a type code, to be combined with | for the types of a filter.
+         *
+         * @param type The type code, for example {@link #DEPOSIT}.
+         * @return The bit.
+         */
+        public static int type(byte type) {
+            return 1 << type;
+        }
+    }
+
+    /**
+     * The totals of one month of an account's transactions.
+     */
+    public static class Statement {
+        private final YearMonth month;
+        private final long[] totals;
+        private final int[] counts;
+
+        Statement(YearMonth month, long[] totals, int[] counts) {
+            this.month = month;
+            this.totals = totals;
+            this.counts = counts;
+        }
+
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        /**
+         * Returns the sum of the transactions of one type in cents.
+         *
+         * @param type The type code, for example {@link #DEPOSIT}.
+         */
+        public long getTotal(byte type) {
+            return totals[type - DEPOSIT];
+        }
+
+        /**
+         * Returns the number of transactions of one type.
+         *
+         * @param type The type code, for example {@link #DEPOSIT}.
+         */
+        public int getCount(byte type) {
+            return counts[type - DEPOSIT];
+        }
+
+        /**
+         * Returns the money that came in minus the money that went out, in cents.
+         */
+        public long getNet() {
+            return getTotal(DEPOSIT) + getTotal(TRANSFER_IN) - getTotal(WITHDRAWAL) - getTotal(TRANSFER_OUT);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package atm;
+
+/**
+ * The outcome of an account operation.
+ */
+public enum TransactionResult {
+    SUCCESS,
+    INVALID_AMOUNT,
+    INSUFFICIENT_FUNDS,
+    DAILY_LIMIT_EXCEEDED,
+    UNKNOWN_ACCOUNT,
+    INVALID_ACCOUNT_ID,
+    SAME_ACCOUNT,
+    ACCOUNT_EXISTS,
+    ACCOUNT_LOCKED,
+    INCORRECT_PIN,
+    INVALID_PIN
+}
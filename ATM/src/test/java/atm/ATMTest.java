@@ -0,0 +1,50 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the history queries of the ATM and its accounts.
+ */
+class ATMTest {
+    @Test
+    void formatHistoryRejectsEmptyPages() {
+        ATM atm = new ATM();
+        assertEquals(TransactionResult.SUCCESS, atm.tryOpenAccount("1001", 10_000, "1234"));
+        BankAccount account = atm.selectAccount("1001");
+        List<String> lines = new ArrayList<>();
+        assertThrows(IllegalArgumentException.class,
+                () -> account.formatHistory(TransactionLog.Filter.ALL, -1, 0, lines));
+        atm.close();
+    }
+
+    @Test
+    void filteredHistoryPagesReachEveryMatch() {
+        ATM atm = new ATM();
+        assertEquals(TransactionResult.SUCCESS, atm.tryOpenAccount("1001", 10_000, "1234"));
+        for (int i = 1; i <= 25; i++) {
+            assertEquals(TransactionResult.SUCCESS, atm.tryDeposit("1001", i));
+            assertEquals(TransactionResult.SUCCESS, atm.tryWithdraw("1001", 1));
+        }
+        BankAccount account = atm.selectAccount("1001");
+        TransactionLog.Filter deposits = new TransactionLog.Filter(Long.MIN_VALUE, Long.MAX_VALUE,
+                TransactionLog.Filter.type(TransactionLog.DEPOSIT), 0, Long.MAX_VALUE);
+        List<String> lines = new ArrayList<>();
+        int pages = 0;
+        long before = -1;
+        do {
+            before = atm.formatTransactionHistory(account, deposits, before, lines);
+            pages++;
+        } while (before >= 0);
+        assertEquals(25, lines.size());
+        assertEquals(3, pages);
+        assertTrue(lines.get(0).endsWith("Deposited: $0.25"), lines.get(0)); // Newest first
+        assertTrue(lines.get(24).endsWith("Deposited: $0.01"), lines.get(24));
+        atm.close();
+    }
+}
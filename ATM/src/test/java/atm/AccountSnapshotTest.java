@@ -0,0 +1,116 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Recovers an ATM from a full snapshot, an incremental snapshot and the journal after them, and
+ * compares it with the ATM that wrote them.
+ */
+class AccountSnapshotTest {
+    private static final int ACCOUNTS = 40;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoveryFromSnapshotChainMatchesLiveState() throws Exception {
+        Path journal = directory.resolve("journal");
+        Path snapshot = directory.resolve("accounts.snap");
+        SplittableRandom random = new SplittableRandom(11);
+
+        ATM atm = ATM.recover(journal, snapshot);
+        for (int i = 1; i <= ACCOUNTS; i++) {
+            assertEquals(TransactionResult.SUCCESS, atm.tryOpenAccount(String.valueOf(i), 100_000, "pin" + i));
+        }
+        runOperations(atm, random, ACCOUNTS, 300);
+        assertEquals(TransactionResult.INCORRECT_PIN, atm.tryVerifyPin("3", "wrong"));
+        atm.checkpoint(true).get();
+
+        runOperations(atm, random, ACCOUNTS, 300);
+        assertEquals(TransactionResult.SUCCESS, atm.tryChangePin("5", "changed5"));
+        for (int i = ACCOUNTS + 1; i <= ACCOUNTS + 5; i++) {
+            assertEquals(TransactionResult.SUCCESS, atm.tryOpenAccount(String.valueOf(i), 5_000, "pin" + i));
+        }
+        atm.checkpoint(false).get();
+        assertTrue(Files.exists(directory.resolve("accounts.snap.1")));
+
+        int accounts = ACCOUNTS + 5;
+        int[] replayedFrom = new int[accounts + 1]; // History entries before the incremental snapshot
+        for (int i = 1; i <= accounts; i++) {
+            replayedFrom[i] = TransactionJournalTest.history(atm, String.valueOf(i)).size();
+        }
+        runOperations(atm, random, accounts, 300);
+        assertEquals(TransactionResult.SUCCESS, atm.tryChangePin("7", "changed7"));
+        long[] balances = balances(atm, accounts);
+        List<List<String>> histories = new ArrayList<>();
+        for (int i = 1; i <= accounts; i++) {
+            histories.add(TransactionJournalTest.history(atm, String.valueOf(i)));
+        }
+        int attemptsLeft = atm.remainingPinAttempts("3");
+        atm.close();
+
+        // Snapshots hold no history, so only the entries replayed from the journal come back
+        ATM recovered = ATM.recover(journal, snapshot);
+        assertArrayEquals(balances, balances(recovered, accounts));
+        for (int i = 1; i <= accounts; i++) {
+            List<String> history = histories.get(i - 1);
+            assertEquals(history.subList(replayedFrom[i], history.size()),
+                    TransactionJournalTest.history(recovered, String.valueOf(i)), "account " + i);
+        }
+        assertEquals(attemptsLeft, recovered.remainingPinAttempts("3"));
+        assertPins(recovered, accounts);
+        recovered.close();
+
+        // The journal alone gives the same balances and the whole history
+        ATM replayed = ATM.recover(journal);
+        assertArrayEquals(balances, balances(replayed, accounts));
+        for (int i = 1; i <= accounts; i++) {
+            assertEquals(histories.get(i - 1), TransactionJournalTest.history(replayed, String.valueOf(i)), "account " + i);
+        }
+        assertPins(replayed, accounts);
+        replayed.close();
+    }
+
+    private static void runOperations(ATM atm, SplittableRandom random, int accounts, int count) {
+        for (int i = 0; i < count; i++) {
+            String account = String.valueOf(random.nextInt(1, accounts + 1));
+            long amount = random.nextLong(1, 5_000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    atm.tryDeposit(account, amount);
+                    break;
+                case 1:
+                    atm.tryWithdraw(account, amount);
+                    break;
+                default:
+                    atm.tryTransfer(account, String.valueOf(random.nextInt(1, accounts + 1)), amount);
+                    break;
+            }
+        }
+    }
+
+    private static long[] balances(ATM atm, int accounts) {
+        long[] balances = new long[accounts + 1];
+        for (int i = 1; i <= accounts; i++) {
+            balances[i] = atm.selectAccount(String.valueOf(i)).getBalance();
+        }
+        return balances;
+    }
+
+    private static void assertPins(ATM atm, int accounts) {
+        for (int i = 1; i <= accounts; i++) {
+            String pin = i == 5 ? "changed5" : i == 7 ? "changed7" : "pin" + i;
+            assertEquals(TransactionResult.SUCCESS, atm.tryVerifyPin(String.valueOf(i), pin), "account " + i);
+        }
+    }
+}
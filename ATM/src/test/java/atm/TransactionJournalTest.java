@@ -0,0 +1,185 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes journals, cuts or damages them, and checks what replay and recovery make of them.
+ */
+class TransactionJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void tornTailIsDiscardedAndOverwritten() throws IOException {
+        Path file = directory.resolve("journal");
+        long[] positions = appendDeposits(file, 20);
+
+        truncate(file, positions[11] + 5); // Inside the 13th record
+        List<String> replayed = new ArrayList<>();
+        TransactionJournal journal = TransactionJournal.open(file, recorder(replayed));
+        assertEquals(12, replayed.size());
+        assertEquals(positions[11], journal.position());
+        journal.appendAmount(TransactionJournal.WITHDRAW, "7", 99);
+        journal.close();
+
+        replayed.clear();
+        TransactionJournal.open(file, recorder(replayed)).close();
+        assertEquals(13, replayed.size());
+        assertEquals("withdraw 7 99", replayed.get(12));
+    }
+
+    @Test
+    void damagedRecordEndsReplay() throws IOException {
+        Path file = directory.resolve("journal");
+        long[] positions = appendDeposits(file, 20);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), positions[6] + 12); // In the 8th payload
+        }
+        List<String> replayed = new ArrayList<>();
+        TransactionJournal.open(file, recorder(replayed)).close();
+        assertEquals(7, replayed.size());
+        assertEquals(positions[6], Files.size(file));
+    }
+
+    @Test
+    void replayCrossesMappedRegions() {
+        Path file = directory.resolve("journal");
+        SplittableRandom random = new SplittableRandom(3);
+        List<String> written = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        TransactionJournal journal = TransactionJournal.open(file, null);
+        while (journal.position() < TransactionJournal.REGION_SIZE * 2 + 1000) {
+            String account = "a".repeat(random.nextInt(1, 3000)); // Records of uneven length straddle the windows
+            long amount = random.nextLong(1, 1_000_000);
+            positions.add(journal.appendAmount(TransactionJournal.DEPOSIT, account, amount));
+            written.add("deposit " + account + " " + amount);
+        }
+        journal.close();
+
+        List<String> replayed = new ArrayList<>();
+        TransactionJournal.open(file, recorder(replayed)).close();
+        assertEquals(written, replayed);
+
+        int middle = written.size() / 2;
+        replayed.clear();
+        TransactionJournal.open(file, positions.get(middle), recorder(replayed)).close();
+        assertEquals(written.subList(middle + 1, written.size()), replayed);
+    }
+
+    @Test
+    void recoveryRestoresBalancesPinsAndHistory() throws IOException {
+        Path file = directory.resolve("journal");
+        ATM atm = ATM.recover(file);
+        assertEquals(TransactionResult.SUCCESS, atm.tryOpenAccount("1", 50_000, "swordfish42"));
+        assertEquals(TransactionResult.SUCCESS, atm.tryOpenAccount("2", 10_000, "2222"));
+        assertEquals(TransactionResult.SUCCESS, atm.tryDeposit("1", 1_250));
+        assertEquals(TransactionResult.SUCCESS, atm.tryWithdraw("2", 3_000));
+        assertEquals(TransactionResult.SUCCESS, atm.tryTransfer("1", "2", 7_777));
+        assertEquals(TransactionResult.SUCCESS, atm.tryChangePin("2", "opensesame"));
+        List<String> before = state(atm, "1", "2");
+        atm.close();
+        long intactSize = Files.size(file);
+
+        String journalText = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        assertTrue(!journalText.contains("swordfish42") && !journalText.contains("opensesame"), "PIN in the journal");
+
+        atm = ATM.recover(file);
+        assertEquals(before, state(atm, "1", "2"));
+        assertEquals(TransactionResult.SUCCESS, atm.tryVerifyPin("1", "swordfish42"));
+        assertEquals(TransactionResult.SUCCESS, atm.tryVerifyPin("2", "opensesame"));
+        assertEquals(TransactionResult.INCORRECT_PIN, atm.tryVerifyPin("2", "2222"));
+        assertEquals(TransactionResult.SUCCESS, atm.tryDeposit("2", 500));
+        atm.close();
+
+        truncate(file, intactSize + 3); // The last deposit is torn
+        atm = ATM.recover(file);
+        assertEquals(before, state(atm, "1", "2"));
+        atm.close();
+    }
+
+    /**
+     * Returns the balances and histories of accounts.
+     */
+    static List<String> state(ATM atm, String... accountIds) {
+        List<String> lines = new ArrayList<>();
+        for (String accountId : accountIds) {
+            lines.add(accountId + " " + atm.selectAccount(accountId).getBalance());
+            lines.addAll(history(atm, accountId));
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the type and amount of every history entry of an account, oldest first. The times
+     * are left out: a replayed entry has the journal record's time, which can be a millisecond later.
+     */
+    static List<String> history(ATM atm, String accountId) {
+        TransactionLog history = atm.selectAccount(accountId).getTransactionHistory();
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < history.size(); i++) {
+            entries.add(TransactionLog.typeLabel(history.type(i)) + " " + history.amount(i));
+        }
+        return entries;
+    }
+
+    private static long[] appendDeposits(Path file, int count) {
+        long[] positions = new long[count];
+        TransactionJournal journal = TransactionJournal.open(file, null);
+        for (int i = 0; i < count; i++) {
+            positions[i] = journal.appendAmount(TransactionJournal.DEPOSIT, String.valueOf(i), 100 + i);
+        }
+        journal.close();
+        return positions;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static TransactionJournal.Visitor recorder(List<String> records) {
+        return new TransactionJournal.Visitor() {
+            @Override
+            public void openAccount(long position, long timestamp, String accountId, long initialBalanceCents, long pinHash) {
+                records.add("open " + accountId + " " + initialBalanceCents + " " + pinHash);
+            }
+
+            @Override
+            public void deposit(long position, long timestamp, String accountId, long amountCents) {
+                records.add("deposit " + accountId + " " + amountCents);
+            }
+
+            @Override
+            public void withdraw(long position, long timestamp, String accountId, long amountCents) {
+                records.add("withdraw " + accountId + " " + amountCents);
+            }
+
+            @Override
+            public void transfer(long position, long timestamp, String sourceAccountId, String targetAccountId,
+                    long amountCents) {
+                records.add("transfer " + sourceAccountId + " " + targetAccountId + " " + amountCents);
+            }
+
+            @Override
+            public void changePin(long position, long timestamp, String accountId, long pinHash) {
+                records.add("pin " + accountId + " " + pinHash);
+            }
+        };
+    }
+}
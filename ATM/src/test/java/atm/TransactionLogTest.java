@@ -0,0 +1,129 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares filtered, paged history queries with a plain scan of every entry ever recorded.
+ */
+class TransactionLogTest {
+    private static final int MAX_ENTRIES = 50;
+
+    @Test
+    void pagesMatchBruteForceAcrossWraparound() {
+        SplittableRandom random = new SplittableRandom(42);
+        TransactionLog log = new TransactionLog(MAX_ENTRIES);
+        List<long[]> recorded = new ArrayList<>(); // {sequence, timestamp, type, amount}
+        long time = 1_000_000;
+        for (int round = 0; round < 500; round++) {
+            time = add(log, recorded, random, time, random.nextInt(1, 20));
+            long[] bounds = randomBounds(random, recorded);
+            TransactionLog.Filter filter = filter(bounds);
+            int[] matches = new int[random.nextInt(1, 8)];
+            long before = Long.MAX_VALUE;
+            List<Long> expected = expected(bounds, recorded, log.size());
+            List<Long> actual = new ArrayList<>();
+            while (true) {
+                int found = log.query(filter, before, matches);
+                for (int i = 0; i < found; i++) {
+                    actual.add(log.sequence(matches[i]));
+                }
+                if (found < matches.length) {
+                    break;
+                }
+                before = log.sequence(matches[found - 1]);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void cursorIsStableWhenEntriesAreAddedOrDropped() {
+        SplittableRandom random = new SplittableRandom(7);
+        TransactionLog log = new TransactionLog(MAX_ENTRIES);
+        List<long[]> recorded = new ArrayList<>();
+        long time = add(log, recorded, random, 1_000_000, MAX_ENTRIES * 3);
+        for (int round = 0; round < 200; round++) {
+            long[] bounds = randomBounds(random, recorded);
+            TransactionLog.Filter filter = filter(bounds);
+            int[] matches = new int[random.nextInt(1, 8)];
+            int found = log.query(filter, Long.MAX_VALUE, matches);
+            if (found < matches.length) {
+                continue;
+            }
+            long before = log.sequence(matches[found - 1]);
+            time = add(log, recorded, random, time, random.nextInt(0, MAX_ENTRIES));
+
+            found = log.query(filter, before, matches);
+            List<Long> actual = new ArrayList<>();
+            for (int i = 0; i < found; i++) {
+                actual.add(log.sequence(matches[i]));
+            }
+            List<Long> expected = new ArrayList<>();
+            for (long sequence : expected(bounds, recorded, log.size())) {
+                if (sequence < before && expected.size() < matches.length) {
+                    expected.add(sequence);
+                }
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static long add(TransactionLog log, List<long[]> recorded, SplittableRandom random, long time, int count) {
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(0, 3) * 1000L; // Repeated timestamps included
+            byte type = (byte) random.nextInt(TransactionLog.DEPOSIT, TransactionLog.TRANSFER_OUT + 1);
+            long amount = random.nextLong(1, 1000);
+            log.add(time, type, amount);
+            recorded.add(new long[] {recorded.size(), time, type, amount});
+        }
+        return time;
+    }
+
+    /**
+     * Returns random filter bounds: {from, to, types, min, max}.
+     */
+    private static long[] randomBounds(SplittableRandom random, List<long[]> recorded) {
+        long first = recorded.get(0)[1];
+        long last = recorded.get(recorded.size() - 1)[1];
+        long from = random.nextBoolean() ? Long.MIN_VALUE : random.nextLong(first - 1000, last + 2000);
+        long to = random.nextBoolean() ? Long.MAX_VALUE : random.nextLong(first - 1000, last + 2000);
+        int types = 0;
+        for (byte type = TransactionLog.DEPOSIT; type <= TransactionLog.TRANSFER_OUT; type++) {
+            if (random.nextInt(3) == 0) {
+                types |= TransactionLog.Filter.type(type);
+            }
+        }
+        long min = random.nextBoolean() ? 0 : random.nextLong(0, 1000);
+        long max = random.nextBoolean() ? Long.MAX_VALUE : random.nextLong(0, 1000);
+        return new long[] {from, to, types, min, max};
+    }
+
+    private static TransactionLog.Filter filter(long[] bounds) {
+        return new TransactionLog.Filter(bounds[0], bounds[1], (int) bounds[2], bounds[3], bounds[4]);
+    }
+
+    /**
+     * Returns the sequence numbers of the retained entries that match a filter, newest first.
+     */
+    private static List<Long> expected(long[] bounds, List<long[]> recorded, int retained) {
+        List<Long> sequences = new ArrayList<>();
+        for (int i = recorded.size() - 1; i >= recorded.size() - retained; i--) {
+            long[] entry = recorded.get(i);
+            if (matches(bounds, entry)) {
+                sequences.add(entry[0]);
+            }
+        }
+        return sequences;
+    }
+
+    private static boolean matches(long[] bounds, long[] entry) {
+        long types = bounds[2] == 0 ? -1 : bounds[2];
+        return entry[1] >= bounds[0] && entry[1] < bounds[1] && (types & (1L << entry[2])) != 0
+                && entry[3] >= bounds[3] && entry[3] <= bounds[4];
+    }
+}
@@ -0,0 +1,543 @@
+package grades;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Grades whole cohorts from large mark files.
+ *
+ * Two input formats are read:
+ * <ul>
+ * <li>CSV, one student per line: "&lt;student id&gt;,&lt;mark&gt;,&lt;mark&gt;,...". A first line that does not
+ * start with a digit is taken as a header. The first student sets the number of subjects.</li>
+ * <li>Binary: a 16-byte header ("GRD1", the number of subjects as an int, the number of students as
+ * a long), then per student the ID as a long and one unsigned byte per mark.</li>
+ * </ul>
+ * Marks run from 0 to 100; a line with a different number of marks or a mark out of range, and a
+ * binary record with a negative ID, are counted as rejected and skipped.
+ *
+ * The input is memory-mapped in chunks of about {@value #CHUNK_SIZE} bytes. Each chunk is one task
+ * on a fork-join pool: it parses the mapped bytes straight into primitive arrays, without a String
+ * per field, grades them with the array forms of the {@link StudentGradeCalculator} methods, and
+ * formats its "&lt;student id&gt;,&lt;total&gt;,&lt;average&gt;,&lt;grade&gt;" lines into one byte array. The chunks are
+ * written in input order as they finish, with at most two per thread in flight, so the output
+ * streams out while later chunks are still being graded and memory use does not grow with the file.
+ */
+public class BulkGrader {
+    static final int BINARY_MAGIC = 0x47524431; // "GRD1"
+    static final int BINARY_HEADER_SIZE = 16;
+    static final int MAX_MARK = 100;
+
+    private static final long CHUNK_SIZE = 16L * 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final int threads;
+    private final long chunkSize;
+
+    /**
+     * Creates a grader.
+     *
+     * @param threads The number of threads that grade chunks at once.
+     */
+    public BulkGrader(int threads) {
+        this(threads, CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a grader with a given chunk size, so that tests can put chunk boundaries anywhere.
+     *
+     * @param threads   The number of threads that grade chunks at once.
+     * @param chunkSize The approximate number of bytes per chunk, at least 1.
+     */
+    BulkGrader(int threads, long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.threads = Math.max(1, threads);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Receives the graded students in input order, on the thread that called
+     * {@link #grade(Path, Path, Listener)}.
+     */
+    public interface Listener {
+        /**
+         * Called for each valid student.
+         *
+         * @param studentId  The student ID.
+         * @param totalMarks The total marks.
+         * @param grade      The index of the grade in {@link StudentGradeCalculator#GRADES}.
+         * @throws IOException If the listener cannot store the student; grading stops.
+         */
+        void graded(long studentId, int totalMarks, int grade) throws IOException;
+    }
+
+    /**
+     * Grades every student in a file.
+     *
+     * @param input  The CSV or binary mark file.
+     * @param output The CSV file for the results. It is replaced if it exists.
+     * @return The numbers of students per grade.
+     * @throws IOException If a file cannot be read or written, or the input is not a mark file.
+     */
+    public Summary grade(Path input, Path output) throws IOException {
+        return grade(input, output, null);
+    }
+
+    /**
+     * Grades every student in a file and passes each one to a listener, for example to rank them.
+     *
+     * @param input    The CSV or binary mark file.
+     * @param output   The CSV file for the results, or null to write none.
+     * @param listener Receives every valid student, or null.
+     * @return The numbers of students per grade.
+     * @throws IOException If a file cannot be read or written, the input is not a mark file, or the listener fails.
+     */
+    public Summary grade(Path input, Path output, Listener listener) throws IOException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = output == null ? null : FileChannel.open(output, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Layout layout = Layout.of(in, chunkSize);
+            Summary summary = new Summary(layout.subjects);
+            boolean format = out != null;
+            boolean keepTotals = listener != null;
+            Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+            for (long position = layout.dataStart; position < layout.dataEnd; position += layout.chunkSize) {
+                long chunkStart = position;
+                long chunkEnd = Math.min(position + layout.chunkSize, layout.dataEnd);
+                pending.add(pool.submit(() -> gradeChunk(in, layout, chunkStart, chunkEnd, format, keepTotals)));
+                if (pending.size() >= threads * 2) {
+                    write(pending.poll(), out, listener, summary);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), out, listener, summary);
+            }
+            summary.bytes = layout.dataEnd;
+            summary.elapsedNanos = System.nanoTime() - start;
+            return summary;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(ForkJoinTask<Chunk> task, FileChannel out, Listener listener, Summary summary)
+            throws IOException {
+        Chunk chunk;
+        try {
+            chunk = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+        if (out != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.output, 0, chunk.outputLength);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        if (listener != null) {
+            for (int student = 0; student < chunk.students; student++) {
+                listener.graded(chunk.ids[student], chunk.totals[student], chunk.grades[student]);
+            }
+        }
+        summary.add(chunk);
+    }
+
+    /**
+     * Parses, grades and formats the students that start within [start, end) of the file.
+     */
+    private static Chunk gradeChunk(FileChannel in, Layout layout, long start, long end, boolean format,
+            boolean keepTotals) {
+        try {
+            Chunk chunk = new Chunk(layout.subjects);
+            if (layout.binary) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                chunk.parseBinary(buffer, (int) ((end - start) / layout.recordSize));
+            } else {
+                long mapEnd = Math.min(in.size(), end + MAX_LINE_LENGTH);
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, start, mapEnd - start);
+                boolean atLineStart = start == layout.dataStart || isLineStart(in, start);
+                chunk.parseCsv(buffer, atLineStart, (int) (end - start), mapEnd == in.size());
+            }
+            chunk.gradeAndFormat(format, keepTotals);
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isLineStart(FileChannel in, long position) throws IOException {
+        ByteBuffer previous = ByteBuffer.allocate(1);
+        in.read(previous, position - 1);
+        return previous.get(0) == '\n';
+    }
+
+    /**
+     * Where the students are in a file and how they are stored.
+     */
+    private static final class Layout {
+        boolean binary;
+        int subjects;
+        int recordSize;
+        long dataStart;
+        long dataEnd;
+        long chunkSize;
+
+        static Layout of(FileChannel in, long chunkSize) throws IOException {
+            Layout layout = new Layout();
+            layout.dataEnd = in.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(in.size(), MAX_LINE_LENGTH));
+            in.read(head, 0);
+            head.flip();
+            if (head.remaining() >= BINARY_HEADER_SIZE && head.getInt(0) == BINARY_MAGIC) {
+                layout.binary = true;
+                layout.subjects = head.getInt(4);
+                if (layout.subjects <= 0) {
+                    throw new IOException("Invalid number of subjects: " + layout.subjects);
+                }
+                layout.recordSize = Long.BYTES + layout.subjects;
+                layout.dataStart = BINARY_HEADER_SIZE;
+                layout.dataEnd = BINARY_HEADER_SIZE + Math.min(head.getLong(8),
+                        (in.size() - BINARY_HEADER_SIZE) / layout.recordSize) * layout.recordSize;
+                layout.chunkSize = Math.max(1, chunkSize / layout.recordSize) * layout.recordSize;
+                return layout;
+            }
+
+            // CSV: skip a header, then count the marks of the first student
+            int position = 0;
+            if (head.hasRemaining() && !Character.isDigit(head.get(0))) {
+                while (position < head.limit() && head.get(position) != '\n') {
+                    position++;
+                }
+                position++;
+            }
+            layout.dataStart = Math.min(position, head.limit());
+            int commas = 0;
+            for (int i = position; i < head.limit() && head.get(i) != '\n'; i++) {
+                if (head.get(i) == ',') {
+                    commas++;
+                }
+            }
+            if (commas == 0) {
+                throw new IOException("Not a mark file: the first student has no marks");
+            }
+            layout.subjects = commas;
+            layout.chunkSize = chunkSize;
+            return layout;
+        }
+    }
+
+    /**
+     * The students of one chunk, as primitive columns, and their formatted results.
+     */
+    private static final class Chunk {
+        final int subjects;
+        int students;
+        int rejected;
+        long[] ids = new long[1024];
+        int[] marks; // Row-major, subjects per student
+        int[] totals; // Kept for a listener
+        byte[] grades;
+        final CohortStatistics statistics;
+        byte[] output;
+        int outputLength;
+
+        Chunk(int subjects) {
+            this.subjects = subjects;
+            this.marks = new int[ids.length * subjects];
+            this.statistics = new CohortStatistics(subjects);
+        }
+
+        private void ensureCapacity() {
+            if (students == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                marks = Arrays.copyOf(marks, ids.length * subjects);
+            }
+        }
+
+        void parseBinary(MappedByteBuffer buffer, int records) {
+            ids = new long[records];
+            marks = new int[records * subjects];
+            int position = 0;
+            for (int record = 0; record < records; record++) {
+                long id = buffer.getLong(position);
+                position += Long.BYTES;
+                int offset = students * subjects;
+                boolean valid = id >= 0; // Formatted as digits only
+                for (int subject = 0; subject < subjects; subject++) {
+                    int mark = buffer.get(position++) & 0xFF;
+                    valid &= mark <= MAX_MARK;
+                    marks[offset + subject] = mark;
+                }
+                if (valid) {
+                    ids[students++] = id;
+                } else {
+                    rejected++;
+                }
+            }
+        }
+
+        /**
+         * Parses the lines that start before limit. A line that starts in this chunk may end in
+         * the next one, which is why the buffer reaches past limit.
+         */
+        void parseCsv(ByteBuffer buffer, boolean atLineStart, int limit, boolean endOfFile) throws IOException {
+            int length = buffer.limit();
+            int position = 0;
+            if (!atLineStart) {
+                position = skipLine(buffer, 0, length); // That line belongs to the previous chunk
+            }
+            while (position < limit) {
+                byte first = buffer.get(position);
+                if (first == '\n' || first == '\r') {
+                    position = skipLine(buffer, position, length); // Blank line
+                    continue;
+                }
+                ensureCapacity();
+                int lineStart = position;
+                int offset = students * subjects;
+                long id = 0;
+                int digits = 0;
+                byte c = 0;
+                while (position < length && (c = buffer.get(position)) >= '0' && c <= '9' && digits < 18) {
+                    id = id * 10 + (c - '0');
+                    digits++;
+                    position++;
+                }
+                boolean valid = digits > 0;
+                int subject = 0;
+                while (valid && position < length && buffer.get(position) == ',') {
+                    position++;
+                    int mark = 0;
+                    int markDigits = 0;
+                    while (position < length && (c = buffer.get(position)) >= '0' && c <= '9' && markDigits < 4) {
+                        mark = mark * 10 + (c - '0');
+                        markDigits++;
+                        position++;
+                    }
+                    valid = markDigits > 0 && mark <= MAX_MARK && subject < subjects;
+                    if (valid) {
+                        marks[offset + subject++] = mark;
+                    }
+                }
+                if (position < length && buffer.get(position) == '\r') {
+                    position++;
+                }
+                boolean lineEnd = position < length ? buffer.get(position) == '\n' : endOfFile;
+                if (!lineEnd && position - lineStart >= MAX_LINE_LENGTH) {
+                    throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes");
+                }
+                if (valid && lineEnd && subject == subjects) {
+                    ids[students++] = id;
+                } else {
+                    rejected++;
+                }
+                position = skipLine(buffer, position, length);
+            }
+        }
+
+        private static int skipLine(ByteBuffer buffer, int position, int length) {
+            while (position < length && buffer.get(position) != '\n') {
+                position++;
+            }
+            return position + 1;
+        }
+
+        void gradeAndFormat(boolean format, boolean keepTotals) {
+            if (format) {
+                output = new byte[Math.max(64, students * (32 + 2 * subjects))];
+            }
+            if (keepTotals) {
+                totals = new int[students];
+                grades = new byte[students];
+            }
+            for (int student = 0; student < students; student++) {
+                int total = StudentGradeCalculator.calculateTotalMarks(marks, student * subjects, subjects);
+                int grade = StudentGradeCalculator.calculateGradeIndex(total, subjects);
+                statistics.add(marks, student * subjects, total, grade);
+                if (keepTotals) {
+                    totals[student] = total;
+                    grades[student] = (byte) grade;
+                }
+                if (!format) {
+                    continue;
+                }
+
+                long average = StudentGradeCalculator.calculateAverageHundredths(total, subjects);
+                if (outputLength + 64 > output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                appendNumber(ids[student]);
+                output[outputLength++] = ',';
+                appendNumber(total);
+                output[outputLength++] = ',';
+                appendNumber(average / 100);
+                output[outputLength++] = '.';
+                output[outputLength++] = (byte) ('0' + average % 100 / 10);
+                output[outputLength++] = (byte) ('0' + average % 10);
+                output[outputLength++] = ',';
+                String label = StudentGradeCalculator.GRADES[grade];
+                for (int i = 0; i < label.length(); i++) {
+                    output[outputLength++] = (byte) label.charAt(i);
+                }
+                output[outputLength++] = '\n';
+            }
+            if (!keepTotals) {
+                ids = null; // The results are formatted; let the columns go while the chunk waits its turn
+            }
+            marks = null;
+        }
+
+        private void appendNumber(long value) {
+            int start = outputLength;
+            do {
+                output[outputLength++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int i = start, j = outputLength - 1; i < j; i++, j--) {
+                byte digit = output[i];
+                output[i] = output[j];
+                output[j] = digit;
+            }
+        }
+    }
+
+    /**
+     * Writes a file of random marks, as binary if its name ends in ".bin", otherwise as CSV.
+     *
+     * @param file     The file to write.
+     * @param students The number of students.
+     * @param subjects The number of subjects per student.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void generate(Path file, long students, int subjects) throws IOException {
+        Random random = new Random(42);
+        boolean binary = file.getFileName().toString().endsWith(".bin");
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            if (binary) {
+                out.writeInt(BINARY_MAGIC);
+                out.writeInt(subjects);
+                out.writeLong(students);
+            } else {
+                out.write("student".getBytes(StandardCharsets.US_ASCII));
+                for (int subject = 1; subject <= subjects; subject++) {
+                    out.write((",subject" + subject).getBytes(StandardCharsets.US_ASCII));
+                }
+                out.write('\n');
+            }
+            for (long id = 1; id <= students; id++) {
+                if (binary) {
+                    out.writeLong(id);
+                } else {
+                    out.write(Long.toString(id).getBytes(StandardCharsets.US_ASCII));
+                }
+                for (int subject = 0; subject < subjects; subject++) {
+                    int mark = (int) Math.max(0, Math.min(MAX_MARK, Math.round(65 + random.nextGaussian() * 15)));
+                    if (binary) {
+                        out.writeByte(mark);
+                    } else {
+                        out.write(',');
+                        out.write(Integer.toString(mark).getBytes(StandardCharsets.US_ASCII));
+                    }
+                }
+                if (!binary) {
+                    out.write('\n');
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * The outcome of a bulk run.
+     */
+    public static class Summary {
+        private long students;
+        private long rejected;
+        private final CohortStatistics statistics;
+        private long bytes;
+        private long elapsedNanos;
+
+        Summary(int subjects) {
+            this.statistics = new CohortStatistics(subjects);
+        }
+
+        void add(Chunk chunk) {
+            students += chunk.students;
+            rejected += chunk.rejected;
+            statistics.merge(chunk.statistics);
+        }
+
+        public long getStudents() {
+            return students;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Returns the number of students with a grade.
+         *
+         * @param grade The index of the grade in {@link StudentGradeCalculator#GRADES}.
+         */
+        public long getGradeCount(int grade) {
+            return statistics.getGradeCount(grade);
+        }
+
+        /**
+         * Returns the statistics of the graded students, merged from every chunk.
+         */
+        public CohortStatistics getStatistics() {
+            return statistics;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            double seconds = elapsedNanos / 1e9;
+            text.append(String.format("Graded %d students (%d rejected) in %.2f s, %.0f MB/s%n",
+                    students, rejected, seconds, bytes / 1e6 / Math.max(seconds, 1e-9)));
+            for (int grade = 0; grade < StudentGradeCalculator.GRADES.length; grade++) {
+                text.append(String.format("%-3s %d%n", StudentGradeCalculator.GRADES[grade], statistics.getGradeCount(grade)));
+            }
+            text.append(String.format("Average %.2f%%, standard deviation %.2f, median total %d, top 10%% from %d%n",
+                    statistics.getMean(), statistics.getStandardDeviation(), statistics.totalPercentile(0.5),
+                    statistics.totalPercentile(0.9)));
+            for (int subject = 0; subject < statistics.getSubjects(); subject++) {
+                text.append(String.format("Subject %d: p10 %d, median %d, p90 %d%n", subject + 1,
+                        statistics.subjectPercentile(subject, 0.1), statistics.subjectPercentile(subject, 0.5),
+                        statistics.subjectPercentile(subject, 0.9)));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package grades;
+
+/**
+ * Statistics of a cohort that are updated one student at a time and can be merged.
+ *
+ * Marks are whole numbers from 0 to {@value BulkGrader#MAX_MARK}, so every distribution is kept as an
+ * exact histogram: one per subject over the marks, and one over the totals. Percentiles and ranks
+ * read the histograms, so they are exact, and the memory use depends only on the number of
+ * subjects, not on the number of students. The mean and standard deviation of the average
+ * percentage are kept with Welford's update, and two partial results are combined with Chan's
+ * formula, so threads can each fill their own instance and merge them at the end.
+ *
+ * An instance is not thread-safe; give each thread its own and {@link #merge(CohortStatistics)} them.
+ */
+public class CohortStatistics {
+    private static final int MARK_VALUES = BulkGrader.MAX_MARK + 1;
+
+    private final int subjects;
+    private final long[] subjectHistograms; // MARK_VALUES counts per subject
+    private final long[] totalHistogram;
+    private final long[] gradeCounts = new long[StudentGradeCalculator.GRADES.length];
+    private long count;
+    private double mean;
+    private double squaredDeviations; // Sum of squared differences from the mean
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param subjects The number of subjects per student.
+     */
+    public CohortStatistics(int subjects) {
+        this.subjects = subjects;
+        this.subjectHistograms = new long[subjects * MARK_VALUES];
+        this.totalHistogram = new long[subjects * BulkGrader.MAX_MARK + 1];
+    }
+
+    /**
+     * Adds one student.
+     *
+     * @param marks  The marks of many students, one student after the other.
+     * @param offset The index of this student's first mark. Marks must be between 0 and 100.
+     * @param total  The student's total, from {@link StudentGradeCalculator#calculateTotalMarks(int[], int, int)}.
+     * @param grade  The student's grade index, from {@link StudentGradeCalculator#calculateGradeIndex(int, int)}.
+     */
+    public void add(int[] marks, int offset, int total, int grade) {
+        for (int subject = 0; subject < subjects; subject++) {
+            subjectHistograms[subject * MARK_VALUES + marks[offset + subject]]++;
+        }
+        totalHistogram[total]++;
+        gradeCounts[grade]++;
+
+        double average = StudentGradeCalculator.calculateAveragePercentage(total, subjects);
+        count++;
+        double delta = average - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (average - mean);
+    }
+
+    /**
+     * Adds the students of other statistics to these.
+     *
+     * @param other Statistics for the same number of subjects. It is not changed.
+     */
+    public void merge(CohortStatistics other) {
+        if (other.subjects != subjects) {
+            throw new IllegalArgumentException("Cannot merge statistics of " + other.subjects + " and " + subjects + " subjects");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        for (int i = 0; i < subjectHistograms.length; i++) {
+            subjectHistograms[i] += other.subjectHistograms[i];
+        }
+        for (int i = 0; i < totalHistogram.length; i++) {
+            totalHistogram[i] += other.totalHistogram[i];
+        }
+        for (int i = 0; i < gradeCounts.length; i++) {
+            gradeCounts[i] += other.gradeCounts[i];
+        }
+        long combined = count + other.count;
+        double delta = other.mean - mean;
+        squaredDeviations += other.squaredDeviations + delta * delta * count * other.count / combined;
+        mean += delta * other.count / combined;
+        count = combined;
+    }
+
+    public int getSubjects() {
+        return subjects;
+    }
+
+    /**
+     * Returns the number of students.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the students' average percentages.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the population standard deviation of the students' average percentages.
+     */
+    public double getStandardDeviation() {
+        return count == 0 ? 0 : Math.sqrt(squaredDeviations / count);
+    }
+
+    /**
+     * Returns the number of students with a grade.
+     *
+     * @param grade The index of the grade in {@link StudentGradeCalculator#GRADES}.
+     */
+    public long getGradeCount(int grade) {
+        return gradeCounts[grade];
+    }
+
+    /**
+     * Returns the mark below or at which the given fraction of the students lie in one subject.
+     *
+     * @param subject  The subject, from 0.
+     * @param fraction The fraction, for example 0.5 for the median.
+     * @return The mark, or 0 if there are no students.
+     */
+    public int subjectPercentile(int subject, double fraction) {
+        return percentile(subjectHistograms, subject * MARK_VALUES, MARK_VALUES, fraction);
+    }
+
+    /**
+     * Returns the total below or at which the given fraction of the students lie.
+     *
+     * @param fraction The fraction, for example 0.9.
+     * @return The total, or 0 if there are no students.
+     */
+    public int totalPercentile(double fraction) {
+        return percentile(totalHistogram, 0, totalHistogram.length, fraction);
+    }
+
+    private int percentile(long[] histogram, int offset, int length, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int value = 0; value < length; value++) {
+            seen += histogram[offset + value];
+            if (seen >= rank) {
+                return value;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the merit rank of a total among the students so far: 1 plus the number of students
+     * with a higher total, so equal totals share a rank.
+     *
+     * @param total The total marks.
+     * @return The rank.
+     */
+    public long rankOf(int total) {
+        long higher = 0;
+        for (int value = Math.max(total + 1, 0); value < totalHistogram.length; value++) {
+            higher += totalHistogram[value];
+        }
+        return higher + 1;
+    }
+}
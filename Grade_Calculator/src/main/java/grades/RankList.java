@@ -0,0 +1,395 @@
+package grades;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A merit list of students by total marks, for cohorts too large to sort in memory.
+ *
+ * Each student is stored as one long key: the total in the high bits, inverted so that a higher
+ * total sorts first, and the student ID in the low {@value #ID_BITS} bits, so that equal totals are
+ * listed by ID. Keys are collected in a buffer of the configured size; when it is full it is sorted
+ * and written to a temporary run file. The list is then produced by merging the runs, reading each
+ * through its own large buffer, so the disk is read and written sequentially. If there are more
+ * runs than the memory allows buffers for, groups of them are first merged into longer runs.
+ *
+ * The output has one line per student: "&lt;rank&gt;,&lt;student id&gt;,&lt;total&gt;". Equal totals share a
+ * rank, and the next total's rank counts every student before it, as in {@link CohortStatistics#rankOf(int)}.
+ */
+public class RankList implements AutoCloseable {
+    static final int ID_BITS = 44;
+    static final long MAX_STUDENT_ID = (1L << ID_BITS) - 1;
+    static final int MAX_TOTAL = (1 << (Long.SIZE - 1 - ID_BITS)) - 1;
+
+    private static final int MIN_RUN_BUFFER = 64 * 1024;
+    private static final int MAX_FAN_IN = 512;
+
+    private final Path directory;
+    private final long memoryBytes;
+    private long[] buffer;
+    private int buffered;
+    private ByteBuffer spillBytes;
+    private final List<Path> runs = new ArrayList<>();
+    private long count;
+    private int spilledRuns;
+
+    /**
+     * Creates an empty list.
+     *
+     * @param memoryBytes How much memory the list may use for sorting and merging.
+     * @param directory   Where to write the temporary run files.
+     */
+    public RankList(long memoryBytes, Path directory) {
+        this.memoryBytes = Math.max(4L * MIN_RUN_BUFFER, memoryBytes);
+        this.directory = directory;
+        this.buffer = new long[(int) Math.min(Integer.MAX_VALUE - 8, this.memoryBytes / Long.BYTES)];
+    }
+
+    /**
+     * Returns the sort key of a student. Smaller keys rank higher.
+     *
+     * @param studentId  The student ID, from 0 to {@value #MAX_STUDENT_ID}.
+     * @param totalMarks The total marks, from 0 to {@value #MAX_TOTAL}.
+     * @return The key.
+     */
+    public static long key(long studentId, int totalMarks) {
+        return (long) (MAX_TOTAL - totalMarks) << ID_BITS | studentId;
+    }
+
+    /**
+     * Returns the student ID of a key.
+     */
+    public static long studentId(long key) {
+        return key & MAX_STUDENT_ID;
+    }
+
+    /**
+     * Returns the total marks of a key.
+     */
+    public static int totalMarks(long key) {
+        return MAX_TOTAL - (int) (key >>> ID_BITS);
+    }
+
+    /**
+     * Adds a student.
+     *
+     * @param studentId  The student ID.
+     * @param totalMarks The total marks.
+     * @throws IOException If a run file cannot be written, or the ID or total is too large to encode.
+     */
+    public void add(long studentId, int totalMarks) throws IOException {
+        if (studentId < 0 || studentId > MAX_STUDENT_ID) {
+            throw new IOException("Student ID " + studentId + " is too large for the rank list");
+        }
+        if (totalMarks < 0 || totalMarks > MAX_TOTAL) {
+            throw new IOException("Total " + totalMarks + " is out of range for the rank list");
+        }
+        if (buffer == null) {
+            throw new IllegalStateException("The rank list was already written");
+        }
+        if (buffered == buffer.length) {
+            spill();
+        }
+        buffer[buffered++] = key(studentId, totalMarks);
+        count++;
+    }
+
+    /**
+     * Returns the number of students added.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of sorted runs that were written to disk, 0 if everything fit in memory.
+     */
+    public int getRuns() {
+        return spilledRuns;
+    }
+
+    private void spill() throws IOException {
+        Arrays.parallelSort(buffer, 0, buffered);
+        Path run = Files.createTempFile(directory, "ranks", ".run");
+        runs.add(run);
+        spilledRuns++;
+        try (FileChannel out = FileChannel.open(run, StandardOpenOption.WRITE)) {
+            if (spillBytes == null) {
+                spillBytes = ByteBuffer.allocateDirect(1 << 20);
+            }
+            ByteBuffer bytes = spillBytes;
+            for (int i = 0; i < buffered; ) {
+                int n = Math.min(buffered - i, bytes.capacity() / Long.BYTES);
+                bytes.clear();
+                bytes.asLongBuffer().put(buffer, i, n);
+                bytes.limit(n * Long.BYTES);
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                i += n;
+            }
+        }
+        buffered = 0;
+    }
+
+    /**
+     * Sorts the students and writes the merit list. After this, no more students can be added.
+     *
+     * @param output The text file for the list. It is replaced if it exists.
+     * @throws IOException If a file cannot be read or written.
+     */
+    public void writeTo(Path output) throws IOException {
+        if (buffer == null) {
+            throw new IllegalStateException("The rank list was already written");
+        }
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            LineWriter lines = new LineWriter(out);
+            if (runs.isEmpty()) {
+                Arrays.parallelSort(buffer, 0, buffered);
+                for (int i = 0; i < buffered; i++) {
+                    lines.accept(buffer[i]);
+                }
+                buffer = null;
+            } else {
+                if (buffered > 0) {
+                    spill();
+                }
+                buffer = null; // The merge buffers take its place
+                int fanIn = (int) Math.min(MAX_FAN_IN, Math.max(2, memoryBytes / MIN_RUN_BUFFER - 1));
+                while (runs.size() > fanIn) {
+                    List<Path> group = new ArrayList<>(runs.subList(0, fanIn));
+                    Path merged = Files.createTempFile(directory, "ranks", ".run");
+                    runs.add(merged);
+                    try (FileChannel mergedOut = FileChannel.open(merged, StandardOpenOption.WRITE)) {
+                        RunWriter writer = new RunWriter(mergedOut, bufferSize(fanIn));
+                        merge(group, writer);
+                        writer.flush();
+                    }
+                    runs.subList(0, fanIn).clear();
+                    deleteAll(group);
+                }
+                merge(runs, lines);
+            }
+            lines.flush();
+        }
+    }
+
+    private int bufferSize(int runCount) {
+        long size = memoryBytes / (runCount + 1) / Long.BYTES * Long.BYTES;
+        return (int) Math.min(1 << 26, Math.max(MIN_RUN_BUFFER, size));
+    }
+
+    /**
+     * Merges sorted runs, using a binary heap of run indexes ordered by each run's current key.
+     */
+    private void merge(List<Path> inputs, KeyConsumer out) throws IOException {
+        int size = bufferSize(inputs.size());
+        RunReader[] readers = new RunReader[inputs.size()];
+        try {
+            int[] heap = new int[readers.length];
+            int heapSize = 0;
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new RunReader(inputs.get(i), size);
+                if (readers[i].next()) {
+                    heap[heapSize] = i;
+                    siftUp(heap, heapSize++, readers);
+                }
+            }
+            while (heapSize > 0) {
+                RunReader top = readers[heap[0]];
+                out.accept(top.key);
+                if (!top.next()) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, readers);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    reader.channel.close();
+                }
+            }
+        }
+    }
+
+    private static void siftUp(int[] heap, int index, RunReader[] readers) {
+        int run = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (readers[heap[parent]].key <= readers[run].key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = run;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, RunReader[] readers) {
+        if (heapSize == 0) {
+            return;
+        }
+        int run = heap[0];
+        long key = readers[run].key;
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && readers[heap[child + 1]].key < readers[heap[child]].key) {
+                child++;
+            }
+            if (key <= readers[heap[child]].key) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = run;
+    }
+
+    /**
+     * Deletes the remaining run files.
+     */
+    @Override
+    public void close() throws IOException {
+        deleteAll(runs);
+        runs.clear();
+        buffer = null;
+    }
+
+    private static void deleteAll(List<Path> files) throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private interface KeyConsumer {
+        void accept(long key) throws IOException;
+    }
+
+    /**
+     * Reads the keys of one run file through a buffer.
+     */
+    private static final class RunReader {
+        final FileChannel channel;
+        final ByteBuffer bytes;
+        long key;
+
+        RunReader(Path run, int bufferSize) throws IOException {
+            channel = FileChannel.open(run, StandardOpenOption.READ);
+            bytes = ByteBuffer.allocateDirect(bufferSize);
+            bytes.flip();
+        }
+
+        boolean next() throws IOException {
+            if (bytes.remaining() < Long.BYTES) {
+                bytes.compact();
+                while (bytes.position() < Long.BYTES) {
+                    if (channel.read(bytes) < 0) {
+                        return false;
+                    }
+                }
+                bytes.flip();
+            }
+            key = bytes.getLong();
+            return true;
+        }
+    }
+
+    /**
+     * Writes keys to an intermediate run file.
+     */
+    private static final class RunWriter implements KeyConsumer {
+        private final FileChannel channel;
+        private final ByteBuffer bytes;
+
+        RunWriter(FileChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        @Override
+        public void accept(long key) throws IOException {
+            if (!bytes.hasRemaining()) {
+                flush();
+            }
+            bytes.putLong(key);
+        }
+
+        void flush() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+
+    /**
+     * Formats keys as the lines of the merit list.
+     */
+    private static final class LineWriter implements KeyConsumer {
+        private final FileChannel channel;
+        private final byte[] line = new byte[64];
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 20);
+        private long position;
+        private long rank;
+        private int previousTotal = -1;
+
+        LineWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void accept(long key) throws IOException {
+            int total = totalMarks(key);
+            position++;
+            if (total != previousTotal) {
+                rank = position;
+                previousTotal = total;
+            }
+            int length = appendNumber(rank, 0);
+            line[length++] = ',';
+            length = appendNumber(studentId(key), length);
+            line[length++] = ',';
+            length = appendNumber(total, length);
+            line[length++] = '\n';
+            if (bytes.remaining() < length) {
+                flush();
+            }
+            bytes.put(line, 0, length);
+        }
+
+        private int appendNumber(long value, int start) {
+            int end = start;
+            do {
+                line[end++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int i = start, j = end - 1; i < j; i++, j--) {
+                byte digit = line[i];
+                line[i] = line[j];
+                line[j] = digit;
+            }
+            return end;
+        }
+
+        void flush() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
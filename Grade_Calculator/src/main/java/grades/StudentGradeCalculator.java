@@ -0,0 +1,179 @@
+/*
+ * Aim: This is the Code for calculating The Grade Of Student
+ * Author: Prasham Togadiya
+ * B.Tech. CSE Student At Darshan University
+ * Rajkot, Gujrat, India
+ * Date: 05-08-2024
+ * 
+ */
+
+package grades;
+
+ import java.io.IOException;
+ import java.nio.file.Path;
+ import java.nio.file.Paths;
+ import java.util.Scanner;
+
+ public class StudentGradeCalculator {
+
+     /**
+      * The grades, from best to worst, as indexed by {@link #calculateGradeIndex(int, int)}.
+      */
+     public static final String[] GRADES = {"A+", "A", "B", "C", "D", "F"};
+
+     /**
+      * The lowest average percentage of each grade in {@link #GRADES}.
+      */
+     private static final int[] GRADE_THRESHOLDS = {90, 80, 70, 60, 50, 0};
+ 
+     /**
+      * This method calculates the total marks from an array of marks.
+      *
+      * @param marks The array of integers representing marks obtained in each subject.
+      * @return The total marks obtained.
+      */
+     public static int calculateTotalMarks(int[] marks) {
+         return calculateTotalMarks(marks, 0, marks.length);
+     }
+
+     /**
+      * This method calculates the total marks of one student in an array that holds the marks of many students.
+      *
+      * @param marks The marks of all students, one student after the other.
+      * @param offset The index of the student's first mark.
+      * @param numberOfSubjects The number of subjects.
+      * @return The total marks obtained.
+      */
+     public static int calculateTotalMarks(int[] marks, int offset, int numberOfSubjects) {
+         int total = 0;
+         for (int i = offset; i < offset + numberOfSubjects; i++) {
+             total += marks[i];
+         }
+         return total;
+     }
+ 
+     /**
+      * This method calculates the average percentage from the total marks and the number of subjects.
+      *
+      * @param totalMarks The total marks obtained across all subjects.
+      * @param numberOfSubjects The number of subjects.
+      * @return The average percentage.
+      */
+     public static double calculateAveragePercentage(int totalMarks, int numberOfSubjects) {
+         return (double) totalMarks / numberOfSubjects;
+     }
+
+     /**
+      * This method calculates the average percentage in hundredths of a percent, rounded half up, without floating point.
+      *
+      * @param totalMarks The total marks obtained across all subjects, not negative.
+      * @param numberOfSubjects The number of subjects.
+      * @return The average percentage times 100, for example 8533 for 85.33%.
+      */
+     public static long calculateAverageHundredths(int totalMarks, int numberOfSubjects) {
+         return ((long) totalMarks * 200 + numberOfSubjects) / (2L * numberOfSubjects);
+     }
+ 
+     /**
+      * This method assigns a grade based on the average percentage.
+      *
+      * @param averagePercentage The average percentage obtained.
+      * @return The grade as a string.
+      */
+     public static String calculateGrade(double averagePercentage) {
+         for (int grade = 0; grade < GRADES.length - 1; grade++) {
+             if (averagePercentage >= GRADE_THRESHOLDS[grade]) {
+                 return GRADES[grade];
+             }
+         }
+         return GRADES[GRADES.length - 1];
+     }
+ 
+     /**
+      * This method assigns a grade from the total marks, comparing whole numbers instead of a computed average.
+      * It gives the same grade as calculateGrade(calculateAveragePercentage(totalMarks, numberOfSubjects)).
+      *
+      * @param totalMarks The total marks obtained across all subjects.
+      * @param numberOfSubjects The number of subjects.
+      * @return The index of the grade in {@link #GRADES}.
+      */
+     public static int calculateGradeIndex(int totalMarks, int numberOfSubjects) {
+         int grade = 0;
+         while (grade < GRADES.length - 1 && (long) totalMarks < (long) GRADE_THRESHOLDS[grade] * numberOfSubjects) {
+             grade++;
+         }
+         return grade;
+     }
+
+     /**
+      * Main method to take input from the user, calculate the total marks, average percentage, and assign a grade.
+      *
+      * @param args Command-line arguments. With "--bulk &lt;input&gt; &lt;output&gt; [threads]", a whole file of
+      *             students is graded instead, see {@link BulkGrader}. With "--generate &lt;file&gt; &lt;students&gt;
+      *             &lt;subjects&gt;", a file of random marks is written for trying it out. With "--rank &lt;input&gt;
+      *             &lt;output&gt; [memory MB]", the merit list of a file is written, see {@link RankList}. With
+      *             "--top &lt;input&gt; &lt;k&gt;", the best k students of each grade are printed, see {@link TopStudents}.
+      * @throws IOException If a bulk file cannot be read or written.
+      */
+     public static void main(String[] args) throws IOException {
+         if (args.length >= 3 && args[0].equals("--bulk")) {
+             int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+             BulkGrader.Summary summary = new BulkGrader(threads).grade(Paths.get(args[1]), Paths.get(args[2]));
+             System.out.println(summary);
+             return;
+         }
+         if (args.length >= 4 && args[0].equals("--generate")) {
+             BulkGrader.generate(Paths.get(args[1]), Long.parseLong(args[2]), Integer.parseInt(args[3]));
+             return;
+         }
+         if (args.length >= 3 && args[0].equals("--rank")) {
+             long memory = (args.length > 3 ? Long.parseLong(args[3]) : 256) * 1024 * 1024;
+             Path output = Paths.get(args[2]).toAbsolutePath();
+             int threads = Runtime.getRuntime().availableProcessors();
+             try (RankList ranks = new RankList(memory, output.getParent())) {
+                 BulkGrader.Summary summary = new BulkGrader(threads).grade(Paths.get(args[1]), null,
+                         (studentId, total, grade) -> ranks.add(studentId, total));
+                 long start = System.nanoTime();
+                 ranks.writeTo(output);
+                 System.out.print(summary);
+                 System.out.printf("Ranked %d students from %d sorted runs in %.2f s%n", ranks.getCount(),
+                         ranks.getRuns(), (System.nanoTime() - start) / 1e9);
+             }
+             return;
+         }
+         if (args.length >= 3 && args[0].equals("--top")) {
+             TopStudents top = new TopStudents(Integer.parseInt(args[2]));
+             int threads = Runtime.getRuntime().availableProcessors();
+             new BulkGrader(threads).grade(Paths.get(args[1]), null, top::add);
+             System.out.print(top);
+             return;
+         }
+
+         Scanner scanner = new Scanner(System.in);
+ 
+         // Input number of subjects
+         System.out.print("Enter the number of subjects: ");
+         int numberOfSubjects = scanner.nextInt();
+ 
+         // Input marks for each subject
+         int[] marks = new int[numberOfSubjects];
+         System.out.println("Enter the marks obtained in each subject (out of 100): ");
+         for (int i = 0; i < numberOfSubjects; i++) {
+             System.out.print("Subject " + (i + 1) + ": ");
+             marks[i] = scanner.nextInt();
+         }
+ 
+         // Calculate total marks, average percentage, and grade
+         int totalMarks = calculateTotalMarks(marks);
+         double averagePercentage = calculateAveragePercentage(totalMarks, numberOfSubjects);
+         String grade = calculateGrade(averagePercentage);
+ 
+         // Display results
+         System.out.println("\nTotal Marks: " + totalMarks);
+         System.out.println("Average Percentage: " + averagePercentage + "%");
+         System.out.println("Grade: " + grade);
+ 
+         scanner.close();
+     }
+ }
+ 
\ No newline at end of file
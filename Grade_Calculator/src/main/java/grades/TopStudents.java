@@ -0,0 +1,108 @@
+package grades;
+
+import java.util.Arrays;
+
+/**
+ * The best students of each grade, without sorting the cohort.
+ *
+ * Each grade keeps the keys of its best students so far (see {@link RankList#key(long, int)}) in a
+ * binary max-heap of at most k entries, whose root is the weakest of them. A student that does not
+ * beat the root is rejected with one comparison, so adding the whole cohort takes one pass and
+ * memory for k students per grade, however large the cohort is.
+ */
+public class TopStudents {
+    private final int k;
+    private final long[][] heaps = new long[StudentGradeCalculator.GRADES.length][];
+    private final int[] sizes = new int[StudentGradeCalculator.GRADES.length];
+
+    /**
+     * Creates empty lists.
+     *
+     * @param k How many students to keep per grade.
+     */
+    public TopStudents(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        for (int grade = 0; grade < heaps.length; grade++) {
+            heaps[grade] = new long[Math.min(k, 1024)];
+        }
+    }
+
+    /**
+     * Offers a student.
+     *
+     * @param studentId  The student ID, from 0 to {@value RankList#MAX_STUDENT_ID}.
+     * @param totalMarks The total marks.
+     * @param grade      The index of the student's grade in {@link StudentGradeCalculator#GRADES}.
+     */
+    public void add(long studentId, int totalMarks, int grade) {
+        if (studentId < 0 || studentId > RankList.MAX_STUDENT_ID || totalMarks < 0 || totalMarks > RankList.MAX_TOTAL) {
+            throw new IllegalArgumentException("Student " + studentId + " with total " + totalMarks + " cannot be ranked");
+        }
+        long key = RankList.key(studentId, totalMarks);
+        long[] heap = heaps[grade];
+        int size = sizes[grade];
+        if (size < k) {
+            if (size == heap.length) {
+                heap = heaps[grade] = Arrays.copyOf(heap, (int) Math.min(k, 2L * size));
+            }
+            int index = size;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent] >= key) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = key;
+            sizes[grade] = size + 1;
+        } else if (key < heap[0]) {
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (key >= heap[child]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = key;
+        }
+    }
+
+    /**
+     * Returns the best students of a grade, best first. Decode them with {@link RankList#studentId(long)}
+     * and {@link RankList#totalMarks(long)}.
+     *
+     * @param grade The index of the grade in {@link StudentGradeCalculator#GRADES}.
+     * @return The keys of at most k students.
+     */
+    public long[] get(int grade) {
+        long[] keys = Arrays.copyOf(heaps[grade], sizes[grade]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int grade = 0; grade < heaps.length; grade++) {
+            long[] keys = get(grade);
+            text.append(StudentGradeCalculator.GRADES[grade]).append(':').append(System.lineSeparator());
+            for (int i = 0; i < keys.length; i++) {
+                text.append(String.format("%6d. %d (%d)%n", i + 1, RankList.studentId(keys[i]),
+                        RankList.totalMarks(keys[i])));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package grades;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Grades the same files with chunks of a few bytes and with a single chunk, and compares both with
+ * grading every row on its own.
+ */
+class BulkGraderTest {
+    private static final long ONE_CHUNK = Long.MAX_VALUE / 2;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void csvResultsDoNotDependOnChunkBoundaries() throws IOException {
+        SplittableRandom random = new SplittableRandom(16);
+        int subjects = 5;
+        StringBuilder csv = new StringBuilder("student,maths,physics,chemistry,biology,english\r\n");
+        List<String> expected = new ArrayList<>();
+        expected.add(appendStudent(csv, random, subjects, "\r\n")); // The first student sets the number of subjects
+        int rejected = 0;
+        for (int row = 0; row < 600; row++) {
+            String newline = random.nextBoolean() ? "\n" : "\r\n";
+            switch (random.nextInt(8)) {
+                case 0:
+                    csv.append(newline); // Blank lines are neither graded nor rejected
+                    break;
+                case 1:
+                    csv.append(row).append(",50,60").append(newline); // Too few marks
+                    rejected++;
+                    break;
+                case 2:
+                    csv.append(row).append(",50,60,101,70,80").append(newline); // Mark out of range
+                    rejected++;
+                    break;
+                case 3:
+                    csv.append("x").append(row).append(",1,2,3,4,5").append(newline);
+                    rejected++;
+                    break;
+                default:
+                    expected.add(appendStudent(csv, random, subjects, newline));
+                    break;
+            }
+        }
+        expected.add(appendStudent(csv, random, subjects, "")); // No newline at the end of the file
+        Path input = directory.resolve("marks.csv");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+        for (long chunkSize : new long[] {1, 7, 64, ONE_CHUNK}) {
+            assertGrades(input, chunkSize, expected, rejected);
+        }
+    }
+
+    @Test
+    void csvLinesMayReachFarPastTheirChunk() throws IOException {
+        SplittableRandom random = new SplittableRandom(17);
+        int subjects = 16_000; // About 64 KB per line, the most the first line may take
+        StringBuilder csv = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        int rejected = 0;
+        for (int row = 0; row < 8; row++) {
+            if (row % 4 == 3) {
+                csv.append(row).append(",").append("9".repeat(70_000)).append("\n"); // Junk longer than 64 KB
+                rejected++;
+            } else {
+                expected.add(appendStudent(csv, random, subjects, row % 2 == 0 ? "\n" : "\r\n"));
+            }
+        }
+        Path input = directory.resolve("wide.csv");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+        for (long chunkSize : new long[] {20_000, 65_536, ONE_CHUNK}) {
+            assertGrades(input, chunkSize, expected, rejected);
+        }
+    }
+
+    @Test
+    void binaryResultsDoNotDependOnChunkBoundaries() throws IOException {
+        SplittableRandom random = new SplittableRandom(18);
+        int subjects = 7;
+        int records = 500;
+        List<String> expected = new ArrayList<>();
+        int rejected = 0;
+        Path input = directory.resolve("marks.bin");
+        try (OutputStream stream = Files.newOutputStream(input)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(BulkGrader.BINARY_MAGIC);
+            out.writeInt(subjects);
+            out.writeLong(records);
+            for (int record = 0; record < records; record++) {
+                int kind = random.nextInt(10);
+                long id = kind == 0 ? -random.nextLong(1, 1_000_000) : random.nextLong(0, Long.MAX_VALUE);
+                int[] marks = new int[subjects];
+                for (int subject = 0; subject < subjects; subject++) {
+                    marks[subject] = random.nextInt(BulkGrader.MAX_MARK + 1);
+                }
+                if (kind == 1) {
+                    marks[random.nextInt(subjects)] = random.nextInt(BulkGrader.MAX_MARK + 1, 256);
+                }
+                out.writeLong(id);
+                for (int mark : marks) {
+                    out.writeByte(mark);
+                }
+                if (kind <= 1) {
+                    rejected++;
+                } else {
+                    expected.add(result(id, marks));
+                }
+            }
+            out.write(new byte[] {1, 2, 3}); // A torn record past the count is ignored
+        }
+
+        for (long chunkSize : new long[] {1, 7, 30, 1000, ONE_CHUNK}) {
+            assertGrades(input, chunkSize, expected, rejected);
+        }
+    }
+
+    private void assertGrades(Path input, long chunkSize, List<String> expected, int rejected) throws IOException {
+        Path output = directory.resolve("results.csv");
+        BulkGrader.Summary summary = new BulkGrader(3, chunkSize).grade(input, output);
+        String message = "chunk size " + chunkSize;
+        assertEquals(expected, Files.readAllLines(output, StandardCharsets.US_ASCII), message);
+        assertEquals(expected.size(), summary.getStudents(), message);
+        assertEquals(rejected, summary.getRejected(), message);
+        for (int grade = 0; grade < StudentGradeCalculator.GRADES.length; grade++) {
+            String suffix = "," + StudentGradeCalculator.GRADES[grade];
+            assertEquals(expected.stream().filter(line -> line.endsWith(suffix)).count(),
+                    summary.getGradeCount(grade), message + ", grade " + StudentGradeCalculator.GRADES[grade]);
+        }
+    }
+
+    /**
+     * Appends a valid student and returns the line it should be graded as.
+     */
+    private static String appendStudent(StringBuilder csv, SplittableRandom random, int subjects, String newline) {
+        long id = random.nextLong(0, 1_000_000_000_000L);
+        int[] marks = new int[subjects];
+        csv.append(id);
+        for (int subject = 0; subject < subjects; subject++) {
+            marks[subject] = random.nextInt(BulkGrader.MAX_MARK + 1);
+            csv.append(',').append(marks[subject]);
+        }
+        csv.append(newline);
+        return result(id, marks);
+    }
+
+    /**
+     * Grades one student with the per-student methods.
+     */
+    private static String result(long id, int[] marks) {
+        int total = StudentGradeCalculator.calculateTotalMarks(marks);
+        String grade = StudentGradeCalculator.calculateGrade(
+                StudentGradeCalculator.calculateAveragePercentage(total, marks.length));
+        BigDecimal average = BigDecimal.valueOf(total).divide(BigDecimal.valueOf(marks.length), 2, RoundingMode.HALF_UP);
+        return id + "," + total + "," + average.toPlainString() + "," + grade;
+    }
+}
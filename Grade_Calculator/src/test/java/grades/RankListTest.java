@@ -0,0 +1,78 @@
+package grades;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes merit lists in memory and through multi-pass merges of run files, and compares them with
+ * sorting every student in memory.
+ */
+class RankListTest {
+    private static final int MIN_MEMORY = 0; // Raised to the smallest budget: 32768 keys per run, 3 runs per merge
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void smallListIsSortedInMemory() throws IOException {
+        assertEquals(0, writeAndCompare(1_000, 1));
+    }
+
+    @Test
+    void multiPassMergeMatchesInMemorySort() throws IOException {
+        int runs = writeAndCompare(300_000, 2); // 10 runs, merged in groups of 3 before the last pass
+        assertTrue(runs > 3, "only " + runs + " runs");
+    }
+
+    /**
+     * Ranks random students, checks the list line by line and returns the number of runs written.
+     */
+    private int writeAndCompare(int students, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[][] expected = new long[students][]; // {student id, total}
+        Path runDirectory = Files.createDirectory(directory.resolve("runs"));
+        Path output = directory.resolve("ranks.csv");
+        int runs;
+        try (RankList list = new RankList(MIN_MEMORY, runDirectory)) {
+            for (int i = 0; i < students; i++) {
+                long id = random.nextLong(RankList.MAX_STUDENT_ID + 1);
+                int total = random.nextInt(501); // Many students share a total
+                list.add(id, total);
+                expected[i] = new long[] {id, total};
+            }
+            assertEquals(students, list.getCount());
+            list.writeTo(output);
+            runs = list.getRuns();
+        }
+        try (Stream<Path> left = Files.list(runDirectory)) {
+            assertEquals(0, left.count(), "run files left after close");
+        }
+
+        Arrays.sort(expected, Comparator.<long[]>comparingLong(student -> -student[1])
+                .thenComparingLong(student -> student[0]));
+        try (BufferedReader in = Files.newBufferedReader(output, StandardCharsets.US_ASCII)) {
+            long rank = 0;
+            for (int i = 0; i < students; i++) {
+                if (i == 0 || expected[i][1] != expected[i - 1][1]) {
+                    rank = i + 1; // Equal totals share a rank; the next one counts everyone before it
+                }
+                assertEquals(rank + "," + expected[i][0] + "," + expected[i][1], in.readLine(), "line " + (i + 1));
+            }
+            assertNull(in.readLine());
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,190 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A load generator for {@link GameServer}.
+ *
+ * It connects many players at once, named "load-1" to "load-n". Each one plays rounds until the
+ * time is up, guessing by binary search over the range the server announces, with an optional
+ * random think time before each guess, and asks for its leaderboard rank after every round. At
+ * the end it prints the guess rate, the rounds won and the latency percentiles.
+ *
+ * Usage: GameLoadClient &lt;host&gt; &lt;port&gt; &lt;players&gt; &lt;seconds&gt; [think millis]
+ */
+public class GameLoadClient {
+    // Latencies are counted in microsecond buckets: exact below 64us, then 32 buckets per power of two
+    private static final int SUB_BUCKETS = 32;
+    private static final int BUCKET_COUNT = 64 + 40 * SUB_BUCKETS;
+
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong guesses = new AtomicLong();
+    private final AtomicLong rounds = new AtomicLong();
+    private final AtomicLong roundsWon = new AtomicLong();
+    private final AtomicLong failedSessions = new AtomicLong();
+    private volatile long maxLatencyMicros;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: GameLoadClient <host> <port> <players> <seconds> [think millis]");
+            return;
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int players = Integer.parseInt(args[2]);
+        long durationMillis = Long.parseLong(args[3]) * 1000;
+        int thinkMillis = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        new GameLoadClient().run(host, port, players, durationMillis, thinkMillis);
+    }
+
+    private void run(String host, int port, int players, long durationMillis, int thinkMillis)
+            throws InterruptedException {
+        ExecutorService executor = GameServer.newSessionExecutor("game-load");
+        CountDownLatch finished = new CountDownLatch(players);
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMillis;
+
+        for (int i = 0; i < players; i++) {
+            String name = "load-" + (i + 1);
+            executor.execute(() -> {
+                try {
+                    runSession(host, port, name, deadline, thinkMillis);
+                } catch (IOException e) {
+                    failedSessions.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        executor.shutdown();
+
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.println("Players:         " + players + " (" + failedSessions.get() + " failed)");
+        System.out.println("Rounds:          " + rounds.get() + " (" + roundsWon.get() + " won)");
+        System.out.println("Guesses:         " + guesses.get());
+        System.out.printf("Guesses/second:  %.0f%n", guesses.get() / seconds);
+        System.out.println("Latency p50:     " + percentile(0.50) + " us");
+        System.out.println("Latency p90:     " + percentile(0.90) + " us");
+        System.out.println("Latency p99:     " + percentile(0.99) + " us");
+        System.out.println("Latency p99.9:   " + percentile(0.999) + " us");
+        System.out.println("Latency max:     " + maxLatencyMicros + " us");
+    }
+
+    private void runSession(String host, int port, String name, long deadline, int thinkMillis)
+            throws IOException, InterruptedException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 256);
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), 256)) {
+            socket.setTcpNoDelay(true);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (!request(in, out, "NAME " + name).startsWith("OK")) {
+                throw new IOException("Name " + name + " was refused");
+            }
+            while (System.currentTimeMillis() < deadline) {
+                String[] round = request(in, out, "NEW").split(" ");
+                if (!round[0].equals("ROUND")) {
+                    throw new IOException("Unexpected response " + String.join(" ", round));
+                }
+                rounds.incrementAndGet();
+                int low = 0;
+                int high = Integer.parseInt(round[1]) - 1;
+                while (true) {
+                    if (thinkMillis > 0) {
+                        Thread.sleep(random.nextInt(2 * thinkMillis + 1));
+                    }
+                    int guess = (low + high) >>> 1;
+                    String response = request(in, out, "GUESS " + guess);
+                    guesses.incrementAndGet();
+                    if (response.startsWith("LOW")) {
+                        low = guess + 1;
+                    } else if (response.startsWith("HIGH")) {
+                        high = guess - 1;
+                    } else if (response.startsWith("CORRECT")) {
+                        roundsWon.incrementAndGet();
+                        break;
+                    } else if (response.startsWith("LOST")) {
+                        break;
+                    } else {
+                        throw new IOException("Unexpected response " + response);
+                    }
+                }
+                request(in, out, "RANK");
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends one command, reads the response and records its latency.
+     */
+    private String request(BufferedReader in, Writer out, String command) throws IOException {
+        long start = System.nanoTime();
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        String response = in.readLine();
+        if (response == null) {
+            throw new IOException("Server closed the connection");
+        }
+        record((System.nanoTime() - start) / 1000);
+        return response;
+    }
+
+    private void record(long micros) {
+        latencyBuckets.incrementAndGet(bucketOf(micros));
+        if (micros > maxLatencyMicros) {
+            maxLatencyMicros = micros; // Racy, but good enough for a report
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < 64) {
+            return (int) Math.max(micros, 0);
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros); // 6 or more
+        int sub = (int) (micros >>> (magnitude - 5)) & (SUB_BUCKETS - 1);
+        return Math.min(64 + (magnitude - 6) * SUB_BUCKETS + sub, BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 64) {
+            return bucket;
+        }
+        int magnitude = (bucket - 64) / SUB_BUCKETS + 6;
+        int sub = (bucket - 64) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 5)) - 1;
+    }
+
+    private long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += latencyBuckets.get(i);
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += latencyBuckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return upperBoundOf(i);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,343 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A TCP server that hosts the number guessing game for many players at once.
+ *
+ * Each connection is one player running on its own thread. On Java 21 and later the sessions run
+ * on virtual threads, so thousands of players waiting for their next guess cost only a few
+ * kilobytes each. The build targets Java 17, though, where they are platform threads with 128 KB
+ * stacks: every connected player holds a thread, so a server on Java 17 is good for a few thousand
+ * players at once, not the tens of thousands a selector loop could serve. A session's state is one
+ * {@link GuessingGame}, and its numbers come from its own {@link SplittableRandom}, split off the
+ * server's when it connects, so sessions never contend on a shared generator. Players who give a
+ * name add the scores of their rounds to a {@link Leaderboard} shared by all sessions.
+ *
+ * The protocol is one command per line, answered by one line:
+ * <pre>
+ * NEW             ROUND &lt;max number&gt; &lt;attempts&gt;
+ * GUESS &lt;n&gt;       LOW &lt;attempts left&gt; | HIGH &lt;attempts left&gt; | CORRECT &lt;score&gt; &lt;total score&gt;
+ *                 | LOST &lt;number&gt; &lt;total score&gt; | ERR NO_ROUND
+ * STATS           OK &lt;rounds&gt; &lt;total score&gt;
+ * NAME &lt;player&gt;   OK &lt;leaderboard score&gt; | ERR INVALID_NAME
+ * RANK            OK &lt;rank&gt; &lt;leaderboard score&gt; | ERR NO_NAME
+ * TOP [n]         OK &lt;lines&gt;, followed by that many lines "&lt;rank&gt; &lt;player&gt; &lt;score&gt;"
+ *                 | ERR INVALID_NUMBER
+ * QUIT            BYE &lt;rounds&gt; &lt;total score&gt;
+ * </pre>
+ * The number of a round is from 0 to max number - 1. LOW means the guess was too low. Rounds count
+ * for the leaderboard from the NAME command on; a name is 1 to {@value Leaderboard#MAX_NAME_LENGTH}
+ * characters without whitespace. A line longer than {@value #MAX_LINE_LENGTH} characters is
+ * answered with ERR LINE_TOO_LONG, and the rest of it is skipped.
+ */
+public class GameServer implements AutoCloseable {
+    private static final int SESSION_BUFFER_SIZE = 256;
+    private static final int MAX_TOP = 1000;
+    private static final int MAX_LINE_LENGTH = 256;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Leaderboard leaderboard;
+    private final SplittableRandom random;
+    private final int maxNumber;
+    private final int maxNumberAttempts;
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private Thread acceptThread;
+
+    /**
+     * Creates a server bound to a local port.
+     *
+     * @param port              The TCP port, or 0 for any free port.
+     * @param maxNumber         The number of values a round's number can take.
+     * @param maxNumberAttempts The number of guesses per round.
+     * @param leaderboard       The leaderboard that named players' scores go to.
+     * @throws IOException If the port cannot be bound.
+     */
+    public GameServer(int port, int maxNumber, int maxNumberAttempts, Leaderboard leaderboard) throws IOException {
+        this.maxNumber = maxNumber;
+        this.leaderboard = leaderboard;
+        this.maxNumberAttempts = maxNumberAttempts;
+        this.random = new SplittableRandom();
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(port), 4096);
+        this.sessions = newSessionExecutor("game-session");
+    }
+
+    /**
+     * Returns an executor that runs every task on its own thread: a virtual thread when the
+     * runtime supports them, otherwise a platform thread with a small stack.
+     *
+     * @param name The name prefix of platform threads.
+     * @return The executor.
+     */
+    static ExecutorService newSessionExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(null, task, name + "-" + count.incrementAndGet(), 128 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     */
+    public void start() {
+        acceptThread = new Thread(this::acceptLoop, "game-accept");
+        acceptThread.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of connected players.
+     */
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                SplittableRandom sessionRandom = random.split(); // Only this thread uses the server's generator
+                sessions.execute(() -> runSession(socket, sessionRandom));
+            } catch (SocketException e) {
+                return; // Server socket closed
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serves one player until they quit or disconnect.
+     */
+    private void runSession(Socket socket, SplittableRandom random) {
+        openSessions.incrementAndGet();
+        GuessingGame game = new GuessingGame(maxNumber, maxNumberAttempts);
+        String player = null;
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII), SESSION_BUFFER_SIZE);
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII), SESSION_BUFFER_SIZE)) {
+            StringBuilder buffer = new StringBuilder();
+            while (readLine(in, buffer)) {
+                if (buffer.length() > MAX_LINE_LENGTH) {
+                    out.write("ERR LINE_TOO_LONG\n");
+                    out.flush();
+                    continue;
+                }
+                String line = buffer.toString().trim();
+                int space = line.indexOf(' ');
+                String command = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+                String argument = space < 0 ? "" : line.substring(space + 1).trim();
+                switch (command) {
+                    case "NEW":
+                        game.startRound(random);
+                        out.write("ROUND " + maxNumber + " " + maxNumberAttempts + "\n");
+                        break;
+                    case "GUESS":
+                        guess(game, argument, player, out);
+                        break;
+                    case "NAME":
+                        try {
+                            leaderboard.join(argument);
+                            player = argument;
+                            out.write("OK " + leaderboard.getScore(player) + "\n");
+                        } catch (IllegalArgumentException e) {
+                            out.write("ERR INVALID_NAME\n");
+                        }
+                        break;
+                    case "RANK":
+                        if (player == null) {
+                            out.write("ERR NO_NAME\n");
+                        } else {
+                            out.write("OK " + leaderboard.getRank(player) + " " + leaderboard.getScore(player) + "\n");
+                        }
+                        break;
+                    case "TOP":
+                        writeTop(argument, out);
+                        break;
+                    case "STATS":
+                        out.write("OK " + game.getRounds() + " " + game.getTotalScore() + "\n");
+                        break;
+                    case "QUIT":
+                        out.write("BYE " + game.getRounds() + " " + game.getTotalScore() + "\n");
+                        out.flush();
+                        return;
+                    default:
+                        out.write("ERR UNKNOWN_COMMAND\n");
+                        break;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The player disconnected
+        } finally {
+            openSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads one line into a buffer, keeping at most {@value #MAX_LINE_LENGTH} + 1 characters of it,
+     * so a client that never sends a line break cannot fill the memory.
+     *
+     * @return False at the end of the stream.
+     */
+    private static boolean readLine(Reader in, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                return line.length() > 0;
+            }
+            if (line.length() <= MAX_LINE_LENGTH) {
+                line.append((char) c);
+            }
+        }
+        return true;
+    }
+
+    private void guess(GuessingGame game, String argument, String player, Writer out) throws IOException {
+        if (!game.isInRound()) {
+            out.write("ERR NO_ROUND\n");
+            return;
+        }
+        int guess;
+        try {
+            guess = Integer.parseInt(argument);
+        } catch (NumberFormatException e) {
+            out.write("ERR INVALID_NUMBER\n");
+            return;
+        }
+        int result = game.guess(guess);
+        if (result == GuessingGame.CORRECT) {
+            if (player != null) {
+                leaderboard.addScore(player, game.getScore());
+            }
+            out.write("CORRECT " + game.getScore() + " " + game.getTotalScore() + "\n");
+        } else if (!game.isInRound()) {
+            out.write("LOST " + game.getNumberToGuess() + " " + game.getTotalScore() + "\n");
+        } else {
+            out.write((result == GuessingGame.TOO_LOW ? "LOW " : "HIGH ") + game.getAttemptsLeft() + "\n");
+        }
+    }
+
+    private void writeTop(String argument, Writer out) throws IOException {
+        int n;
+        try {
+            n = argument.isEmpty() ? 10 : Math.min(Integer.parseInt(argument), MAX_TOP);
+        } catch (NumberFormatException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            out.write("ERR INVALID_NUMBER\n");
+            return;
+        }
+        List<Leaderboard.Standing> standings = leaderboard.top(n);
+        out.write("OK " + standings.size() + "\n");
+        for (Leaderboard.Standing standing : standings) {
+            out.write(standing.toString());
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the session threads.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+        try {
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     *
+     * @param args &lt;port&gt; [--max &lt;number&gt;] [--attempts &lt;n&gt;] [--leaderboard &lt;file&gt;] [--snapshot &lt;seconds&gt;].
+     *             The defaults of --max and --attempts are those of the console game, 100 and 10. With
+     *             --leaderboard, the leaderboard is loaded from the file if it exists, and written back to
+     *             it every --snapshot seconds (default 60) and when the server stops.
+     * @throws IOException If the port cannot be bound or the leaderboard cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: GameServer <port> [--max <number>] [--attempts <n>] [--leaderboard <file>]"
+                    + " [--snapshot <seconds>]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int maxNumber = GuessingGame.DEFAULT_MAX_NUMBER;
+        int attempts = GuessingGame.DEFAULT_MAX_ATTEMPTS;
+        Path leaderboardFile = null;
+        long snapshotSeconds = 60;
+        for (int i = 1; i < args.length - 1; i += 2) {
+            if (args[i].equals("--max")) {
+                maxNumber = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--attempts")) {
+                attempts = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--leaderboard")) {
+                leaderboardFile = Paths.get(args[i + 1]);
+            } else if (args[i].equals("--snapshot")) {
+                snapshotSeconds = Long.parseLong(args[i + 1]);
+            }
+        }
+        Leaderboard leaderboard = new Leaderboard();
+        if (leaderboardFile != null) {
+            if (Files.exists(leaderboardFile)) {
+                leaderboard.readSnapshot(leaderboardFile);
+                System.out.println("Loaded " + leaderboard.size() + " players from " + leaderboardFile);
+            }
+            leaderboard.startSnapshots(leaderboardFile, snapshotSeconds);
+        }
+        GameServer server = new GameServer(port, maxNumber, attempts, leaderboard);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Exiting anyway
+            }
+            leaderboard.close();
+        }));
+        server.start();
+        System.out.println("Game server listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,157 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * The rules of one player's rounds of the number guessing game, without any input or output.
+ *
+ * A round picks a number from 0 to maxNumber - 1 and accepts up to maxNumberAttempts guesses. A
+ * correct guess scores maxNumberAttempts - attempts + 1 points, so guessing sooner scores more;
+ * running out of attempts scores nothing. The state is a few primitive fields, so a server can keep
+ * one per connected player cheaply.
+ */
+public class GuessingGame {
+    public static final int DEFAULT_MAX_NUMBER = 100;
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    /** The guess was below the number. */
+    public static final int TOO_LOW = -1;
+    /** The guess was the number. */
+    public static final int CORRECT = 0;
+    /** The guess was above the number. */
+    public static final int TOO_HIGH = 1;
+
+    private final int maxNumber;
+    private final int maxNumberAttempts;
+    private int numberToGuess;
+    private int attempts;
+    private boolean inRound;
+    private boolean guessedCorrect;
+    private int rounds;
+    private long totalScore;
+
+    /**
+     * Creates a game with the default range and attempts.
+     */
+    public GuessingGame() {
+        this(DEFAULT_MAX_NUMBER, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Creates a game.
+     *
+     * @param maxNumber         The number of values the number can take, from 0.
+     * @param maxNumberAttempts The number of guesses per round.
+     */
+    public GuessingGame(int maxNumber, int maxNumberAttempts) {
+        if (maxNumber <= 0 || maxNumberAttempts <= 0) {
+            throw new IllegalArgumentException("maxNumber and maxNumberAttempts must be positive");
+        }
+        this.maxNumber = maxNumber;
+        this.maxNumberAttempts = maxNumberAttempts;
+    }
+
+    /**
+     * Starts a round with a random number. An unfinished round is abandoned with no score.
+     *
+     * @param random The source of the number.
+     */
+    public void startRound(SplittableRandom random) {
+        startRound(random.nextInt(maxNumber));
+    }
+
+    /**
+     * Starts a round with a given number.
+     *
+     * @param number The number to guess, from 0 to maxNumber - 1.
+     */
+    public void startRound(int number) {
+        numberToGuess = number;
+        attempts = 0;
+        guessedCorrect = false;
+        inRound = true;
+        rounds++;
+    }
+
+    /**
+     * Takes one guess of the current round.
+     *
+     * @param guess The guess.
+     * @return {@link #TOO_LOW}, {@link #CORRECT} or {@link #TOO_HIGH}.
+     * @throws IllegalStateException If no round is in progress.
+     */
+    public int guess(int guess) {
+        if (!inRound) {
+            throw new IllegalStateException("No round in progress");
+        }
+        attempts++;
+        if (guess == numberToGuess) {
+            guessedCorrect = true;
+            inRound = false;
+            totalScore += getScore();
+            return CORRECT;
+        }
+        if (attempts >= maxNumberAttempts) {
+            inRound = false;
+        }
+        return guess < numberToGuess ? TOO_LOW : TOO_HIGH;
+    }
+
+    /**
+     * Returns true while the current round accepts guesses.
+     */
+    public boolean isInRound() {
+        return inRound;
+    }
+
+    /**
+     * Returns true if the last round was won.
+     */
+    public boolean isGuessedCorrect() {
+        return guessedCorrect;
+    }
+
+    /**
+     * Returns the score of the last round: maxNumberAttempts - attempts + 1 if it was won, otherwise 0.
+     */
+    public int getScore() {
+        return guessedCorrect ? maxNumberAttempts - attempts + 1 : 0;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getAttemptsLeft() {
+        return maxNumberAttempts - attempts;
+    }
+
+    /**
+     * Returns the number of the current or last round.
+     */
+    public int getNumberToGuess() {
+        return numberToGuess;
+    }
+
+    public int getMaxNumber() {
+        return maxNumber;
+    }
+
+    public int getMaxNumberAttempts() {
+        return maxNumberAttempts;
+    }
+
+    /**
+     * Returns the number of rounds started.
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Returns the sum of the scores of all rounds.
+     */
+    public long getTotalScore() {
+        return totalScore;
+    }
+}
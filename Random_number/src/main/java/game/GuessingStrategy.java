@@ -0,0 +1,121 @@
+package game;
+
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+/**
+ * A way of playing rounds of the guessing game, for {@link MonteCarlo} simulations.
+ *
+ * A strategy keeps its state in its own fields and is reset at the start of each round, so a
+ * simulation creates one per thread and no objects per round. Instances are not thread-safe.
+ */
+public interface GuessingStrategy {
+    /**
+     * Prepares for a new round.
+     *
+     * @param maxNumber The number is from 0 to maxNumber - 1.
+     */
+    void startRound(int maxNumber);
+
+    /**
+     * Returns the next guess.
+     *
+     * @param random The simulation thread's random numbers.
+     * @return The guess.
+     */
+    int nextGuess(SplittableRandom random);
+
+    /**
+     * Receives the answer to the last guess.
+     *
+     * @param guess  The guess.
+     * @param result {@link GuessingGame#TOO_LOW}, {@link GuessingGame#CORRECT} or {@link GuessingGame#TOO_HIGH}.
+     */
+    void feedback(int guess, int result);
+
+    /**
+     * Returns a factory for a strategy by name: "binary", "random", or "biased:&lt;fraction&gt;".
+     *
+     * @param name The name.
+     * @return A factory that creates a new instance on every call.
+     * @throws IllegalArgumentException If the name is unknown.
+     */
+    static Supplier<GuessingStrategy> named(String name) {
+        if (name.equals("binary")) {
+            return () -> new Biased(0.5);
+        }
+        if (name.equals("random")) {
+            return Uniform::new;
+        }
+        if (name.startsWith("biased:")) {
+            double fraction = Double.parseDouble(name.substring("biased:".length()));
+            if (!(fraction >= 0 && fraction <= 1)) {
+                throw new IllegalArgumentException("The fraction of " + name + " must be from 0 to 1");
+            }
+            return () -> new Biased(fraction);
+        }
+        throw new IllegalArgumentException("Unknown strategy " + name + ", expected binary, random or biased:<fraction>");
+    }
+
+    /**
+     * Keeps the range the number can still be in and guesses at a fixed fraction of it: the middle
+     * is binary search, other fractions favour the low or high end.
+     */
+    final class Biased implements GuessingStrategy {
+        private final double fraction;
+        private int low;
+        private int high;
+
+        public Biased(double fraction) {
+            this.fraction = fraction;
+        }
+
+        @Override
+        public void startRound(int maxNumber) {
+            low = 0;
+            high = maxNumber - 1;
+        }
+
+        @Override
+        public int nextGuess(SplittableRandom random) {
+            return low + (int) ((high - low) * fraction + 0.5);
+        }
+
+        @Override
+        public void feedback(int guess, int result) {
+            if (result == GuessingGame.TOO_LOW) {
+                low = guess + 1;
+            } else if (result == GuessingGame.TOO_HIGH) {
+                high = guess - 1;
+            }
+        }
+    }
+
+    /**
+     * Keeps the range the number can still be in and guesses anywhere in it at random.
+     */
+    final class Uniform implements GuessingStrategy {
+        private int low;
+        private int high;
+
+        @Override
+        public void startRound(int maxNumber) {
+            low = 0;
+            high = maxNumber - 1;
+        }
+
+        @Override
+        public int nextGuess(SplittableRandom random) {
+            return low >= high ? low : random.nextInt(low, high + 1);
+        }
+
+        @Override
+        public void feedback(int guess, int result) {
+            if (result == GuessingGame.TOO_LOW) {
+                low = guess + 1;
+            } else if (result == GuessingGame.TOO_HIGH) {
+                high = guess - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The total scores of all players, shared by every game session.
+ *
+ * Three structures answer the queries, and none of them takes a lock on the read side:
+ * <ul>
+ * <li>a concurrent hash map from player name to player, for updates and score lookups;</li>
+ * <li>a concurrent skip list of (score, player) entries ordered from the highest score, so the top
+ * N are the first N entries;</li>
+ * <li>a Fenwick tree of player counts per score over an {@link AtomicLongArray}, so the number of
+ * players above a score, and with it a rank, is a sum of O(log n) cells. Scores at or above the
+ * tree's limit are counted from the skip list instead; few players get there.</li>
+ * </ul>
+ * An update replaces the player's entry under that player's own monitor, so updates of different
+ * players never wait for each other and readers never wait at all. A reader that runs during an
+ * update may see the player's old or new score, and a rank may be off by one until the update ends.
+ *
+ * Players with the same score share a rank. Snapshots are written to a temporary file and then
+ * moved over the previous one, so a crash never leaves a half-written snapshot.
+ */
+public class Leaderboard implements AutoCloseable {
+    private static final int SNAPSHOT_MAGIC = 0x4C425331; // "LBS1"
+
+    /** The longest player name, in characters. */
+    public static final int MAX_NAME_LENGTH = 64;
+
+    private static final Comparator<Entry> ORDER = (a, b) -> a.score != b.score
+            ? Long.compare(b.score, a.score)
+            : Integer.compare(a.player.id, b.player.id);
+
+    private final ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final AtomicLongArray counts; // Fenwick tree of players per score below exactScores
+    private final int exactScores;
+    private final AtomicLong counted = new AtomicLong();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private ScheduledExecutorService snapshots;
+    private Path snapshotFile;
+
+    /**
+     * A player and their current entry.
+     */
+    private static final class Player {
+        final int id;
+        final String name;
+        volatile Entry entry;
+
+        Player(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * One score of one player. Entries are immutable; an update adds a new one and removes the old.
+     */
+    private static final class Entry {
+        final long score;
+        final Player player;
+
+        Entry(long score, Player player) {
+            this.score = score;
+            this.player = player;
+        }
+    }
+
+    /**
+     * A player's place on the leaderboard.
+     */
+    public static final class Standing {
+        private final long rank;
+        private final String name;
+        private final long score;
+
+        Standing(long rank, String name, long score) {
+            this.rank = rank;
+            this.name = name;
+            this.score = score;
+        }
+
+        public long getRank() {
+            return rank;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return rank + " " + name + " " + score;
+        }
+    }
+
+    /**
+     * Creates an empty leaderboard that ranks scores below 2^20 through its tree.
+     */
+    public Leaderboard() {
+        this(1 << 20);
+    }
+
+    /**
+     * Creates an empty leaderboard.
+     *
+     * @param exactScores The scores below this are counted in the tree, which takes 8 bytes per score.
+     */
+    public Leaderboard(int exactScores) {
+        this.exactScores = exactScores;
+        this.counts = new AtomicLongArray(exactScores + 1);
+    }
+
+    /**
+     * Adds a player with a score of 0 if they are not on the leaderboard yet.
+     *
+     * @param name The player's name: 1 to {@value #MAX_NAME_LENGTH} characters without whitespace.
+     * @throws IllegalArgumentException If the name is not valid.
+     */
+    public void join(String name) {
+        player(name);
+    }
+
+    private Player player(String name) {
+        Player player = players.get(name);
+        if (player != null) {
+            return player;
+        }
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH || name.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("Invalid player name: '" + name + "'");
+        }
+        return players.computeIfAbsent(name, n -> {
+            Player created = new Player(nextId.getAndIncrement(), n);
+            synchronized (created) {
+                created.entry = new Entry(0, created);
+                ranking.add(created.entry);
+                count(0, 1);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Adds points to a player's total score, adding the player if needed.
+     *
+     * @param name   The player's name.
+     * @param points The points, 0 or more.
+     * @return The player's new total score.
+     * @throws IllegalArgumentException If the name is not valid or the points are negative.
+     */
+    public long addScore(String name, long points) {
+        if (points < 0) {
+            throw new IllegalArgumentException("Points must not be negative: " + points);
+        }
+        return setScore(player(name), points, true);
+    }
+
+    private long setScore(Player player, long score, boolean add) {
+        synchronized (player) {
+            Entry old = player.entry;
+            long newScore = add ? old.score + score : score;
+            if (newScore == old.score) {
+                return newScore;
+            }
+            Entry entry = new Entry(newScore, player);
+            // A reader iterating meanwhile counts whichever entry is current when it gets there, so it
+            // may list the player twice or skip them, see top()
+            ranking.add(entry);
+            player.entry = entry;
+            ranking.remove(old);
+            count(newScore, 1);
+            count(old.score, -1);
+            return newScore;
+        }
+    }
+
+    private void count(long score, long delta) {
+        if (score >= exactScores) {
+            return;
+        }
+        counted.addAndGet(delta);
+        for (int i = (int) score + 1; i <= exactScores; i += i & -i) {
+            counts.addAndGet(i, delta);
+        }
+    }
+
+    /**
+     * Returns the number of counted players with a score of at most the given one.
+     */
+    private long countAtMost(int score) {
+        long sum = 0;
+        for (int i = score + 1; i > 0; i -= i & -i) {
+            sum += counts.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of players on the leaderboard.
+     */
+    public int size() {
+        return players.size();
+    }
+
+    /**
+     * Returns a player's total score.
+     *
+     * @param name The player's name.
+     * @return The score, or -1 if the player is not on the leaderboard.
+     */
+    public long getScore(String name) {
+        Player player = players.get(name);
+        return player == null ? -1 : player.entry.score;
+    }
+
+    /**
+     * Returns a player's rank: 1 plus the number of players with a higher score.
+     *
+     * @param name The player's name.
+     * @return The rank, or -1 if the player is not on the leaderboard.
+     */
+    public long getRank(String name) {
+        Player player = players.get(name);
+        return player == null ? -1 : rankOf(player.entry.score);
+    }
+
+    private long rankOf(long score) {
+        long higher = 0;
+        if (score < exactScores) {
+            higher = counted.get() - countAtMost((int) score);
+            score = exactScores - 1; // Then count the players above the tree
+        }
+        Iterator<Entry> top = ranking.iterator();
+        while (top.hasNext()) {
+            Entry entry = top.next();
+            if (entry.score <= score) {
+                break;
+            }
+            if (entry == entry.player.entry) {
+                higher++;
+            }
+        }
+        return Math.max(higher, 0) + 1;
+    }
+
+    /**
+     * Returns the players with the highest scores, best first.
+     *
+     * @param n The number of players, 0 or more.
+     * @return At most n standings.
+     * @throws IllegalArgumentException If n is negative.
+     */
+    public List<Standing> top(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of players must not be negative: " + n);
+        }
+        List<Standing> standings = new ArrayList<>(Math.min(n, 1024));
+        long position = 0;
+        long rank = 0;
+        long previousScore = -1;
+        for (Entry entry : ranking) {
+            if (standings.size() >= n) {
+                break;
+            }
+            if (entry != entry.player.entry) {
+                continue; // Replaced by an update that is still running
+            }
+            position++;
+            if (entry.score != previousScore) {
+                rank = position;
+                previousScore = entry.score;
+            }
+            standings.add(new Standing(rank, entry.player.name, entry.score));
+        }
+        return standings;
+    }
+
+    /**
+     * Writes every player's score to a snapshot file, replacing it atomically.
+     *
+     * @param file The snapshot file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temporaryFile = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(players.size()); // A hint; players that join during the write are included
+                for (Player player : players.values()) {
+                    out.writeUTF(player.name);
+                    out.writeLong(player.entry.score);
+                }
+                out.writeUTF(""); // End marker
+            }
+            Files.move(temporaryFile, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Loads the scores of a snapshot file into this leaderboard, replacing the scores of players
+     * that are already on it.
+     *
+     * @param file The snapshot file.
+     * @throws IOException If the file cannot be read, is not a leaderboard snapshot or has an invalid name.
+     */
+    public void readSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is not a leaderboard snapshot");
+            }
+            in.readInt();
+            String name;
+            while (!(name = in.readUTF()).isEmpty()) {
+                long score = in.readLong();
+                if (score < 0) {
+                    throw new IOException(file + ": negative score for " + name);
+                }
+                Player player;
+                try {
+                    player = player(name);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ": " + e.getMessage());
+                }
+                setScore(player, score, false);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot periodically on a background thread, and once more on {@link #close()}.
+     *
+     * @param file          The snapshot file.
+     * @param periodSeconds The time between snapshots.
+     */
+    public synchronized void startSnapshots(Path file, long periodSeconds) {
+        if (snapshots != null) {
+            throw new IllegalStateException("Snapshots already started");
+        }
+        snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "leaderboard-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleWithFixedDelay(() -> snapshot(file), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        snapshotFile = file;
+    }
+
+    private void snapshot(Path file) {
+        try {
+            writeSnapshot(file);
+        } catch (IOException e) {
+            System.err.println("Leaderboard snapshot failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last one.
+     */
+    @Override
+    public synchronized void close() {
+        if (snapshots != null) {
+            snapshots.shutdown();
+            try {
+                snapshots.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshot(snapshotFile);
+            snapshots = null;
+        }
+    }
+}
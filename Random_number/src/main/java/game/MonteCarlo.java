@@ -0,0 +1,208 @@
+package game;
+
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Plays the guessing game headlessly with a {@link GuessingStrategy}, many rounds at a time, to
+ * see how maxNumber, maxNumberAttempts and the scoring rule play out.
+ *
+ * The rounds are split into tasks of {@value #ROUNDS_PER_TASK} rounds that run on a parallel stream.
+ * Each task has its own {@link GuessingGame}, strategy and {@link SplittableRandom}, and counts
+ * scores into its own {@link Result}; the results are merged at the end. Nothing is allocated per
+ * round. The task generators are split off one seeded generator in task order, so a seed gives the
+ * same result on any number of cores.
+ */
+public class MonteCarlo {
+    private static final int ROUNDS_PER_TASK = 1 << 20;
+
+    /**
+     * Simulates rounds with one configuration.
+     *
+     * @param maxNumber         The number of values a round's number can take.
+     * @param maxNumberAttempts The number of guesses per round.
+     * @param strategies        Creates the strategy of each task.
+     * @param rounds            The number of rounds.
+     * @param seed              The seed of the random numbers.
+     * @return The distribution of the scores.
+     */
+    public static Result simulate(int maxNumber, int maxNumberAttempts, Supplier<GuessingStrategy> strategies,
+            long rounds, long seed) {
+        long taskCount = (rounds + ROUNDS_PER_TASK - 1) / ROUNDS_PER_TASK;
+        if (taskCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many rounds: " + rounds);
+        }
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[(int) taskCount];
+        for (int task = 0; task < randoms.length; task++) {
+            randoms[task] = root.split();
+        }
+        return IntStream.range(0, randoms.length).parallel()
+                .mapToObj(task -> play(maxNumber, maxNumberAttempts, strategies.get(), randoms[task],
+                        Math.min(ROUNDS_PER_TASK, rounds - (long) task * ROUNDS_PER_TASK)))
+                .reduce(Result::merge)
+                .orElseGet(() -> new Result(maxNumberAttempts));
+    }
+
+    private static Result play(int maxNumber, int maxNumberAttempts, GuessingStrategy strategy,
+            SplittableRandom random, long rounds) {
+        GuessingGame game = new GuessingGame(maxNumber, maxNumberAttempts);
+        Result result = new Result(maxNumberAttempts);
+        for (long round = 0; round < rounds; round++) {
+            game.startRound(random);
+            strategy.startRound(maxNumber);
+            while (game.isInRound()) {
+                int guess = strategy.nextGuess(random);
+                strategy.feedback(guess, game.guess(guess));
+            }
+            result.scoreCounts[game.getScore()]++;
+            result.attemptCounts[game.getAttempts()]++;
+        }
+        return result;
+    }
+
+    /**
+     * The outcome of a simulation: how many rounds ended with each score and each number of attempts.
+     */
+    public static class Result {
+        private final long[] scoreCounts;
+        private final long[] attemptCounts;
+
+        Result(int maxNumberAttempts) {
+            this.scoreCounts = new long[maxNumberAttempts + 1];
+            this.attemptCounts = new long[maxNumberAttempts + 1];
+        }
+
+        private Result merge(Result other) {
+            for (int i = 0; i < scoreCounts.length; i++) {
+                scoreCounts[i] += other.scoreCounts[i];
+                attemptCounts[i] += other.attemptCounts[i];
+            }
+            return this;
+        }
+
+        public long getRounds() {
+            long rounds = 0;
+            for (long count : scoreCounts) {
+                rounds += count;
+            }
+            return rounds;
+        }
+
+        /**
+         * Returns the number of rounds that scored a given number of points.
+         *
+         * @param score The score, from 0 (lost) to maxNumberAttempts (first guess).
+         */
+        public long getScoreCount(int score) {
+            return scoreCounts[score];
+        }
+
+        /**
+         * Returns the number of rounds that took a given number of guesses.
+         *
+         * @param attempts The number of guesses, from 1 to maxNumberAttempts.
+         */
+        public long getAttemptCount(int attempts) {
+            return attemptCounts[attempts];
+        }
+
+        /**
+         * Returns the fraction of rounds that were won.
+         */
+        public double getWinRate() {
+            return 1 - (double) scoreCounts[0] / Math.max(1, getRounds());
+        }
+
+        /**
+         * Returns the mean score per round.
+         */
+        public double getExpectedScore() {
+            double sum = 0;
+            for (int score = 0; score < scoreCounts.length; score++) {
+                sum += (double) score * scoreCounts[score];
+            }
+            return sum / Math.max(1, getRounds());
+        }
+
+        /**
+         * Returns the standard deviation of the score per round.
+         */
+        public double getScoreStandardDeviation() {
+            double mean = getExpectedScore();
+            double sum = 0;
+            for (int score = 0; score < scoreCounts.length; score++) {
+                sum += (score - mean) * (score - mean) * scoreCounts[score];
+            }
+            return Math.sqrt(sum / Math.max(1, getRounds()));
+        }
+
+        /**
+         * Returns the mean number of guesses per round, lost rounds included.
+         */
+        public double getExpectedAttempts() {
+            double sum = 0;
+            for (int attempts = 0; attempts < attemptCounts.length; attempts++) {
+                sum += (double) attempts * attemptCounts[attempts];
+            }
+            return sum / Math.max(1, getRounds());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("win rate %.4f, expected score %.4f (sd %.4f), expected guesses %.4f%n",
+                    getWinRate(), getExpectedScore(), getScoreStandardDeviation(), getExpectedAttempts()));
+            long rounds = Math.max(1, getRounds());
+            for (int score = scoreCounts.length - 1; score >= 0; score--) {
+                text.append(String.format("  score %2d: %.6f%n", score, (double) scoreCounts[score] / rounds));
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Simulates every combination of the given settings and prints the results.
+     *
+     * @param args &lt;rounds&gt; [--max &lt;n,n,...&gt;] [--attempts &lt;n,n,...&gt;] [--strategies &lt;name,name,...&gt;]
+     *             [--seed &lt;n&gt;]. The defaults are the console game's 100 and 10, and the binary strategy.
+     *             Strategy names are those of {@link GuessingStrategy#named(String)}.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: MonteCarlo <rounds> [--max <n,n,...>] [--attempts <n,n,...>]"
+                    + " [--strategies <binary|random|biased:<fraction>,...>] [--seed <n>]");
+            return;
+        }
+        long rounds = Long.parseLong(args[0]);
+        String[] maxNumbers = {String.valueOf(GuessingGame.DEFAULT_MAX_NUMBER)};
+        String[] attempts = {String.valueOf(GuessingGame.DEFAULT_MAX_ATTEMPTS)};
+        String[] strategies = {"binary"};
+        long seed = 42;
+        for (int i = 1; i < args.length - 1; i += 2) {
+            if (args[i].equals("--max")) {
+                maxNumbers = args[i + 1].split(",");
+            } else if (args[i].equals("--attempts")) {
+                attempts = args[i + 1].split(",");
+            } else if (args[i].equals("--strategies")) {
+                strategies = args[i + 1].split(",");
+            } else if (args[i].equals("--seed")) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+        }
+        for (String strategy : strategies) {
+            Supplier<GuessingStrategy> factory = GuessingStrategy.named(strategy);
+            for (String maxNumber : maxNumbers) {
+                for (String attempt : attempts) {
+                    long start = System.nanoTime();
+                    Result result = simulate(Integer.parseInt(maxNumber), Integer.parseInt(attempt), factory, rounds, seed);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("%s, max number %s, %s attempts: %d rounds in %.2f s (%.0f rounds/s)%n",
+                            strategy, maxNumber, attempt, result.getRounds(), seconds, result.getRounds() / seconds);
+                    System.out.print(result);
+                }
+            }
+        }
+    }
+}
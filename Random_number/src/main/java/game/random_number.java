@@ -1,3 +1,7 @@
+package game;
+
+import java.util.Random;
+import java.util.Scanner;
 
 /**
  * A simple number guessing game where the user tries to guess a randomly generated number.
@@ -9,10 +13,6 @@
  * Author: Prasham Togadiya
  * Created Date: 5/8/2024
 */
-
-import java.util.Random;
-import java.util.Scanner;
-
 public class random_number {
     public static void main(String[] args) {
         Scanner sc = new Scanner(System.in);
@@ -59,27 +59,21 @@ public class random_number {
      *         made
      */
     public static int playRound(Scanner sc, Random random) {
-        int maxNumber = 100;
-        int maxNumberAttempts = 10;
-        int attempts = 0;
-        int score = 0;
-        int numberToGuess = random.nextInt(maxNumber);
-        boolean guessedCorrect = false;
+        GuessingGame game = new GuessingGame(); // The rules, shared with GameServer and MonteCarlo
+        game.startRound(random.nextInt(game.getMaxNumber()));
 
         System.out.println("\nGuess the number between 1 and 100. You have 10 attempts.");
 
         // Loop until the user either guesses correctly or exhausts all attempts
-        while (attempts < maxNumberAttempts && !guessedCorrect) {
-            System.out.print("\nAttempt " + (attempts + 1) + " : ");
+        while (game.isInRound()) {
+            System.out.print("\nAttempt " + (game.getAttempts() + 1) + " : ");
             int userGuess = sc.nextInt();
-            attempts++;
+            int result = game.guess(userGuess);
 
-            if (userGuess == numberToGuess) {
-                guessedCorrect = true;
-                score = maxNumberAttempts - attempts + 1; // Higher score for fewer attempts
-                System.out.println("\nCongratulations! You guessed the correct number in " + attempts + " attempts.");
-                System.out.println("You scored: " + score + " points in this round.");
-            } else if (userGuess < numberToGuess) {
+            if (result == GuessingGame.CORRECT) {
+                System.out.println("\nCongratulations! You guessed the correct number in " + game.getAttempts() + " attempts.");
+                System.out.println("You scored: " + game.getScore() + " points in this round.");
+            } else if (result == GuessingGame.TOO_LOW) {
                 System.out.println("Your guess is too low.");
             } else {
                 System.out.println("Your guess is too high.");
@@ -87,10 +81,10 @@ public class random_number {
         }
 
         // Inform the user if they've used all attempts without guessing correctly
-        if (!guessedCorrect) {
-            System.out.println("Sorry, you've used all your attempts. The correct number was " + numberToGuess + ".");
+        if (!game.isGuessedCorrect()) {
+            System.out.println("Sorry, you've used all your attempts. The correct number was " + game.getNumberToGuess() + ".");
         }
 
-        return score;
+        return game.getScore(); // Higher score for fewer attempts
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares ranks and top lists with sorting every player's score, with a tree small enough that
+ * many scores are counted from the skip list instead.
+ */
+class LeaderboardTest {
+    private static final int EXACT_SCORES = 50;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ranksAndTopMatchBruteForce() {
+        SplittableRandom random = new SplittableRandom(20);
+        Leaderboard leaderboard = new Leaderboard(EXACT_SCORES);
+        Map<String, Long> scores = new LinkedHashMap<>(); // In joining order, which breaks ties
+        for (int round = 0; round < 2_000; round++) {
+            String name = "player" + random.nextInt(150);
+            if (random.nextInt(10) == 0) {
+                leaderboard.join(name);
+                scores.putIfAbsent(name, 0L);
+            } else {
+                long points = random.nextInt(4) == 0 ? 0 : random.nextLong(1, 15);
+                scores.merge(name, points, Long::sum);
+                assertEquals(scores.get(name), leaderboard.addScore(name, points));
+            }
+            if (round % 50 == 0) {
+                assertMatches(scores, leaderboard);
+            }
+        }
+        assertMatches(scores, leaderboard);
+        assertEquals(-1, leaderboard.getRank("nobody"));
+        assertEquals(List.of(), leaderboard.top(0));
+        assertThrows(IllegalArgumentException.class, () -> leaderboard.top(-1));
+    }
+
+    @Test
+    void snapshotRoundTripKeepsScoresAndRanks() throws IOException {
+        SplittableRandom random = new SplittableRandom(21);
+        Leaderboard leaderboard = new Leaderboard(EXACT_SCORES);
+        Map<String, Long> scores = new LinkedHashMap<>();
+        for (int i = 0; i < 300; i++) {
+            String name = "player" + random.nextInt(100);
+            long points = random.nextLong(0, 40);
+            scores.merge(name, points, Long::sum);
+            leaderboard.addScore(name, points);
+        }
+        Path file = directory.resolve("leaderboard.snap");
+        leaderboard.writeSnapshot(file);
+        leaderboard.writeSnapshot(file); // Replaces the first one
+
+        Leaderboard loaded = new Leaderboard(EXACT_SCORES);
+        loaded.addScore("player0", 1_000); // Replaced by the snapshot's score
+        loaded.readSnapshot(file);
+        assertEquals(scores.size(), loaded.size());
+        for (Map.Entry<String, Long> player : scores.entrySet()) {
+            assertEquals(player.getValue(), loaded.getScore(player.getKey()), player.getKey());
+            assertEquals(leaderboard.getRank(player.getKey()), loaded.getRank(player.getKey()), player.getKey());
+        }
+        assertEquals(scores(leaderboard.top(scores.size())), scores(loaded.top(scores.size())));
+    }
+
+    private static void assertMatches(Map<String, Long> scores, Leaderboard leaderboard) {
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(scores.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue())); // Stable, so ties stay in joining order
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            Map.Entry<String, Long> player = sorted.get(i);
+            long rank = 1 + scores.values().stream().filter(score -> score > player.getValue()).count();
+            assertEquals(rank, leaderboard.getRank(player.getKey()), player.getKey());
+            expected.add(rank + " " + player.getKey() + " " + player.getValue());
+        }
+        assertEquals(scores.size(), leaderboard.size());
+        for (int n : new int[] {1, 5, sorted.size(), sorted.size() + 10}) {
+            List<String> actual = new ArrayList<>();
+            for (Leaderboard.Standing standing : leaderboard.top(n)) {
+                actual.add(standing.toString());
+            }
+            assertEquals(expected.subList(0, Math.min(n, expected.size())), actual, "top " + n);
+        }
+    }
+
+    /**
+     * Returns the names and scores of standings, whose order within a score depends on when players joined.
+     */
+    private static Map<String, Long> scores(List<Leaderboard.Standing> standings) {
+        Map<String, Long> scores = new LinkedHashMap<>();
+        for (Leaderboard.Standing standing : standings) {
+            scores.put(standing.getName(), standing.getScore());
+        }
+        return scores;
+    }
+}